@@ -0,0 +1,229 @@
+package qrcode;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking facade of a {@link QrEncoder}: the QR codes are encoded on an executor and
+ * handed back through a {@link CompletableFuture}, or through a {@link Flow.Publisher} for
+ * a sequence of texts.
+ *
+ * A publisher encodes a QR code only once its subscriber has requested it, one at a time
+ * and in the order of the texts, so a slow subscriber never makes QR codes pile up.
+ *
+ * Each QR code is encoded entirely by the task running it, without the concurrent error
+ * correction and mask scoring of {@link QrEncoder#encode(CharSequence)}, so that the
+ * executor alone decides how much runs at once. The default executor starts a virtual
+ * thread per task when the Java runtime has them, and is the common fork join pool
+ * otherwise.
+ */
+public final class AsyncQrEncoder {
+
+	private static final Executor DEFAULT_EXECUTOR = defaultExecutor();
+
+	private final QrEncoder encoder;
+	private final Executor executor;
+
+	/**
+	 * Create an asynchronous encoder running on the default executor
+	 *
+	 * @param encoder
+	 *            the encoder of the QR codes
+	 */
+	public AsyncQrEncoder(QrEncoder encoder) {
+		this(encoder, DEFAULT_EXECUTOR);
+	}
+
+	/**
+	 * Create an asynchronous encoder running on the given executor
+	 *
+	 * @param encoder
+	 *            the encoder of the QR codes
+	 * @param executor
+	 *            the executor running the encodings
+	 */
+	public AsyncQrEncoder(QrEncoder encoder, Executor executor) {
+		this.encoder = Objects.requireNonNull(encoder);
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * @return the encoder of the QR codes
+	 */
+	public QrEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * @return the executor running the encodings
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Encode a text into a QR code on the executor
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @return a future completed with the QR code, or exceptionally with the
+	 *         IllegalArgumentException thrown by {@link QrEncoder#encode(CharSequence)}
+	 */
+	public CompletableFuture<QrCode> encode(CharSequence input) {
+		return CompletableFuture.supplyAsync(() -> encoder.encode(input, false), executor);
+	}
+
+	/**
+	 * Encode and render a text on the executor
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @return a future completed with the matrix of {@link QrEncoder#render(CharSequence)}
+	 */
+	public CompletableFuture<int[][]> render(CharSequence input) {
+		return CompletableFuture.supplyAsync(() -> encoder.render(encoder.encode(input, false)), executor);
+	}
+
+	/**
+	 * Publish the QR codes of a sequence of texts. Each subscriber iterates over the texts
+	 * again, and receives their QR codes in order as it requests them. An error while
+	 * encoding a text ends the subscription with that error.
+	 *
+	 * @param inputs
+	 *            The texts to encode
+	 * @return a publisher of the QR codes
+	 */
+	public Flow.Publisher<QrCode> encodeAll(Iterable<? extends CharSequence> inputs) {
+		Objects.requireNonNull(inputs);
+		return subscriber -> {
+			Objects.requireNonNull(subscriber);
+			Iterator<? extends CharSequence> iterator;
+			try {
+				iterator = inputs.iterator();
+			} catch (RuntimeException e) {
+				subscriber.onSubscribe(new EncodingSubscription(subscriber, null));
+				subscriber.onError(e);
+				return;
+			}
+			EncodingSubscription subscription = new EncodingSubscription(subscriber, iterator);
+			subscriber.onSubscribe(subscription);
+			// signals the completion of an empty sequence without waiting for a request
+			subscription.schedule();
+		};
+	}
+
+	/*
+	 * Subscription encoding the next text each time one more QR code is requested. The
+	 * encodings run in a loop on the executor, started when the demand goes up and stopped
+	 * when it is met: the requests arriving meanwhile are counted in pending, so that a
+	 * single loop runs at a time and the subscriber is never called concurrently.
+	 */
+	private final class EncodingSubscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super QrCode> subscriber;
+		private final Iterator<? extends CharSequence> inputs;
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable invalidRequest;
+
+		EncodingSubscription(Flow.Subscriber<? super QrCode> subscriber, Iterator<? extends CharSequence> inputs) {
+			this.subscriber = subscriber;
+			this.inputs = inputs;
+			this.cancelled = inputs == null;
+		}
+
+		@Override
+		public void request(long n) {
+			if (cancelled) {
+				return;
+			}
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("The number of QR codes requested has to be positive, not " + n);
+			} else {
+				requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		void schedule() {
+			if (pending.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RuntimeException e) {
+					cancelled = true;
+					subscriber.onError(e);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				long demand = requested.get();
+				long emitted = 0;
+				while (!cancelled) {
+					if (invalidRequest != null) {
+						terminate(invalidRequest);
+						return;
+					}
+					QrCode code = null;
+					try {
+						if (inputs.hasNext()) {
+							if (emitted == demand) {
+								break;
+							}
+							code = encoder.encode(inputs.next(), false);
+						}
+					} catch (Throwable e) {
+						// an error of the texts or the encoding must end the subscription too,
+						// or the loop would stop silently
+						terminate(e);
+						return;
+					}
+					if (code == null) {
+						cancelled = true;
+						subscriber.onComplete();
+						return;
+					}
+					subscriber.onNext(code);
+					++emitted;
+				}
+				if (demand != Long.MAX_VALUE) {
+					requested.addAndGet(-emitted);
+				}
+				missed = pending.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void terminate(Throwable error) {
+			cancelled = true;
+			subscriber.onError(error);
+		}
+	}
+
+	/**
+	 * Use a virtual thread per task if the Java runtime has them. They are looked up by
+	 * reflection so that the project still builds and runs on older runtimes.
+	 */
+	private static Executor defaultExecutor() {
+		try {
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return ForkJoinPool.commonPool();
+		}
+	}
+}
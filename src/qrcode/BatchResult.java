@@ -0,0 +1,61 @@
+package qrcode;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * QR codes encoded together by {@link QrEncoder#encodeBatch(List)}, in the order of their
+ * texts, with the time the batch took.
+ */
+public final class BatchResult {
+
+	private final List<QrCode> codes;
+	private final int groupCount;
+	private final long elapsedNanos;
+
+	BatchResult(List<QrCode> codes, int groupCount, long elapsedNanos) {
+		this.codes = Collections.unmodifiableList(codes);
+		this.groupCount = groupCount;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return the QR codes, in the order of the texts
+	 */
+	public List<QrCode> getCodes() {
+		return codes;
+	}
+
+	/**
+	 * @return the number of QR codes
+	 */
+	public int getCount() {
+		return codes.size();
+	}
+
+	/**
+	 * @return the number of different versions and levels among the QR codes
+	 */
+	public int getGroupCount() {
+		return groupCount;
+	}
+
+	/**
+	 * @return the time taken by the batch, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the number of QR codes encoded per second
+	 */
+	public double getThroughput() {
+		return elapsedNanos == 0 ? 0 : codes.size() * 1e9 / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d QR codes in %d groups, %.1f ms, %.0f codes/s", codes.size(), groupCount, elapsedNanos / 1e6, getThroughput());
+	}
+}
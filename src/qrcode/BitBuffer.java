@@ -0,0 +1,211 @@
+package qrcode;
+
+import java.util.Arrays;
+
+/**
+ * Growable sequence of bits, written and read most significant bit first.
+ *
+ * The bits are packed 8 per codeword in an int array, the form expected by
+ * {@link reedsolomon.ErrorCorrectionEncoding}, so that the stages of the encoding append to
+ * the same buffer and the error correction reads it in place. Clearing a buffer keeps its
+ * array: once it has grown to the largest symbol encoded, it is reused without allocation.
+ */
+public final class BitBuffer {
+
+	int[] codewords;
+	private int length;
+
+	/**
+	 * Create an empty buffer
+	 */
+	public BitBuffer() {
+		this(0);
+	}
+
+	/**
+	 * Create an empty buffer able to hold a number of bits without growing
+	 *
+	 * @param capacity
+	 *            the number of bits
+	 */
+	public BitBuffer(int capacity) {
+		codewords = new int[(capacity + 7) >>> 3];
+	}
+
+	/**
+	 * Create a buffer holding a copy of a sequence of codewords
+	 *
+	 * @param codewords
+	 *            the codewords, 8 bits each
+	 * @return a buffer of codewords.length * 8 bits
+	 */
+	public static BitBuffer of(int[] codewords) {
+		BitBuffer buffer = new BitBuffer(codewords.length * 8);
+		buffer.appendCodewords(codewords, 0, codewords.length);
+		return buffer;
+	}
+
+	/**
+	 * @return a buffer holding a copy of the bits, with no spare capacity
+	 */
+	public BitBuffer copy() {
+		BitBuffer copy = new BitBuffer(length);
+		System.arraycopy(codewords, 0, copy.codewords, 0, copy.codewords.length);
+		copy.length = length;
+		return copy;
+	}
+
+	/**
+	 * Remove all the bits, keeping the capacity
+	 */
+	public void clear() {
+		Arrays.fill(codewords, 0, (length + 7) >>> 3, 0);
+		length = 0;
+	}
+
+	/**
+	 * Make sure that a number of bits can be held without growing
+	 *
+	 * @param capacity
+	 *            the number of bits
+	 */
+	public void ensureCapacity(int capacity) {
+		int needed = (capacity + 7) >>> 3;
+		if (needed > codewords.length) {
+			codewords = Arrays.copyOf(codewords, Math.max(needed, codewords.length * 2));
+		}
+	}
+
+	/**
+	 * @return the number of bits written
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the number of codewords started, that is the length rounded up to a
+	 *         multiple of 8 bits
+	 */
+	public int getCodewordCount() {
+		return (length + 7) >>> 3;
+	}
+
+	/**
+	 * Append the count least significant bits of a value, most significant first
+	 *
+	 * @param value
+	 *            the bits to append
+	 * @param count
+	 *            the number of bits, between 0 and 32
+	 */
+	public void append(int value, int count) {
+		if (count < 0 || count > 32) {
+			throw new IllegalArgumentException("Between 0 and 32 bits can be appended at once, not " + count);
+		}
+		ensureCapacity(length + count);
+		while (count > 0) {
+			int free = 8 - (length & 7);
+			int written = Math.min(free, count);
+			int bits = (value >>> (count - written)) & ((1 << written) - 1);
+			codewords[length >>> 3] |= bits << (free - written);
+			length += written;
+			count -= written;
+		}
+	}
+
+	/**
+	 * Append codewords of 8 bits
+	 *
+	 * @param source
+	 *            the array containing the codewords
+	 * @param offset
+	 *            the index of the first codeword to append
+	 * @param count
+	 *            the number of codewords
+	 */
+	public void appendCodewords(int[] source, int offset, int count) {
+		ensureCapacity(length + count * 8);
+		if ((length & 7) == 0) {
+			int start = length >>> 3;
+			for (int i = 0; i < count; i++) {
+				codewords[start + i] = source[offset + i] & 0xFF;
+			}
+			length += count * 8;
+		} else {
+			for (int i = 0; i < count; i++) {
+				append(source[offset + i], 8);
+			}
+		}
+	}
+
+	/**
+	 * @param index
+	 *            the position of the bit
+	 * @return true if the bit is 1
+	 */
+	public boolean getBit(int index) {
+		checkRange(index, 1);
+		return ((codewords[index >>> 3] >>> (7 - (index & 7))) & 1) != 0;
+	}
+
+	/**
+	 * Read bits as an unsigned value
+	 *
+	 * @param index
+	 *            the position of the first bit
+	 * @param count
+	 *            the number of bits, between 0 and 31
+	 * @return the bits, the first one being the most significant
+	 */
+	public int getBits(int index, int count) {
+		if (count < 0 || count > 31) {
+			throw new IllegalArgumentException("Between 0 and 31 bits can be read at once, not " + count);
+		}
+		checkRange(index, count);
+		int value = 0;
+		while (count > 0) {
+			int available = 8 - (index & 7);
+			int read = Math.min(available, count);
+			int bits = (codewords[index >>> 3] >>> (available - read)) & ((1 << read) - 1);
+			value = (value << read) | bits;
+			index += read;
+			count -= read;
+		}
+		return value;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the codeword
+	 * @return the 8 bits of the codeword, 0 for the bits not written yet
+	 */
+	public int getCodeword(int index) {
+		checkRange(index * 8, 1);
+		return codewords[index];
+	}
+
+	/**
+	 * @return a copy of the codewords started
+	 */
+	public int[] toCodewords() {
+		return Arrays.copyOf(codewords, getCodewordCount());
+	}
+
+	/**
+	 * @return a copy of the bits, one boolean per bit
+	 */
+	public boolean[] toBooleanArray() {
+		boolean[] bits = new boolean[length];
+		for (int i = 0; i < length; i++) {
+			bits[i] = ((codewords[i >>> 3] >>> (7 - (i & 7))) & 1) != 0;
+		}
+		return bits;
+	}
+
+	private void checkRange(int index, int count) {
+		if (index < 0 || index + count > length) {
+			throw new IndexOutOfBoundsException("Bits " + index + " to " + (index + count) + " out of " + length);
+		}
+	}
+}
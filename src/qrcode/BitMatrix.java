@@ -0,0 +1,157 @@
+package qrcode;
+
+/**
+ * Packed representation of a QR code symbol, one bit per module.
+ *
+ * The symbol is stored as two bitplanes of longs: one for the color of the modules
+ * (1 = black) and one marking the modules belonging to a function pattern or to the
+ * format information, which must not receive data. Each row starts on a new long, the
+ * module of column col being bit (col % 64) of the long col / 64 of its row. The bits
+ * beyond the size of the symbol are always 0.
+ *
+ * Coordinates follow the int[][] matrices of {@link MatrixConstruction}: the first one
+ * is the column (x), the second one the row (y).
+ */
+public final class BitMatrix {
+
+	final int size;
+	final int stride;
+	final long[] modules;
+	final long[] reserved;
+
+	/**
+	 * Create an empty symbol: all modules white and none reserved
+	 *
+	 * @param size
+	 *            the number of modules on a side of the symbol
+	 */
+	public BitMatrix(int size) {
+		this.size = size;
+		this.stride = (size + 63) >>> 6;
+		this.modules = new long[size * stride];
+		this.reserved = new long[size * stride];
+	}
+
+	/**
+	 * @return the number of modules on a side of the symbol
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @param col
+	 *            x-coordinate
+	 * @param row
+	 *            y-coordinate
+	 * @return true if the module is black
+	 */
+	public boolean isDark(int col, int row) {
+		return (modules[index(col, row)] & bit(col)) != 0;
+	}
+
+	/**
+	 * Set the color of a module without reserving it
+	 *
+	 * @param col
+	 *            x-coordinate
+	 * @param row
+	 *            y-coordinate
+	 * @param dark
+	 *            true for a black module
+	 */
+	public void setDark(int col, int row, boolean dark) {
+		int index = index(col, row);
+		if (dark) {
+			modules[index] |= bit(col);
+		} else {
+			modules[index] &= ~bit(col);
+		}
+	}
+
+	/**
+	 * @param col
+	 *            x-coordinate
+	 * @param row
+	 *            y-coordinate
+	 * @return true if the module belongs to a function pattern or to the format information
+	 */
+	public boolean isReserved(int col, int row) {
+		return (reserved[index(col, row)] & bit(col)) != 0;
+	}
+
+	/**
+	 * Set the color of a module and reserve it, so that no data is written on it
+	 *
+	 * @param col
+	 *            x-coordinate
+	 * @param row
+	 *            y-coordinate
+	 * @param dark
+	 *            true for a black module
+	 */
+	public void setFunction(int col, int row, boolean dark) {
+		setDark(col, row, dark);
+		reserved[index(col, row)] |= bit(col);
+	}
+
+	/**
+	 * Replace the content of this symbol by a copy of another symbol of the same size
+	 *
+	 * @param other
+	 *            the symbol to copy
+	 */
+	public void copyFrom(BitMatrix other) {
+		if (other.size != size) {
+			throw new IllegalArgumentException("The size of the two symbols does not match: " + size + " and " + other.size);
+		}
+		System.arraycopy(other.modules, 0, modules, 0, modules.length);
+		System.arraycopy(other.reserved, 0, reserved, 0, reserved.length);
+	}
+
+	/**
+	 * Convert the symbol to the ARGB matrix used by the rest of the project
+	 *
+	 * @return a matrix where matrix[col][row] is {@link MatrixConstruction#B} or
+	 *         {@link MatrixConstruction#W}
+	 */
+	public int[][] toARGB() {
+		int[][] matrix = new int[size][size];
+		for (int row = 0; row < size; row++) {
+			int base = row * stride;
+			for (int col = 0; col < size; col++) {
+				boolean dark = (modules[base + (col >>> 6)] & bit(col)) != 0;
+				matrix[col][row] = dark ? MatrixConstruction.B : MatrixConstruction.W;
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Convert an ARGB matrix to a packed symbol. Black modules are dark, every other
+	 * color is white, and no module is reserved.
+	 *
+	 * @param matrix
+	 *            the 2-dimensional array representing the QR code
+	 * @return the packed symbol
+	 */
+	public static BitMatrix fromARGB(int[][] matrix) {
+		BitMatrix symbol = new BitMatrix(matrix.length);
+		for (int col = 0; col < matrix.length; col++) {
+			for (int row = 0; row < matrix.length; row++) {
+				if (matrix[col][row] == MatrixConstruction.B) {
+					symbol.setDark(col, row, true);
+				}
+			}
+		}
+		return symbol;
+	}
+
+	int index(int col, int row) {
+		return row * stride + (col >>> 6);
+	}
+
+	static long bit(int col) {
+		return 1L << (col & 63);
+	}
+}
@@ -1,27 +1,104 @@
 package qrcode;
 
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
+import qrcode.QRCodeInfos.CorrectionLvl;
 import reedsolomon.ErrorCorrectionEncoding;
 
 public final class DataEncoding {
 
+	/*
+	 * Smallest version whose blocks get their error correction computed concurrently by
+	 * the methods encoding a single symbol into new arrays
+	 */
+	public static final int PARALLEL_ECC_VERSION = 20;
+
 	/**
 	 * @param input
 	 * @param version
 	 * @return
 	 */
 	public static boolean[] byteModeEncoding(String input, int version) {
-        int maxInputLength = QRCodeInfos.getMaxInputLength(version);
-        int codeWordsLength = QRCodeInfos.getCodeWordsLength(version);
-        int ECCLength = QRCodeInfos.getECCLength(version);
+		return byteModeEncoding(input, version, CorrectionLvl.L);
+	}
 
-        int[] encodedString = encodeString(input, maxInputLength);
-        int[] encodedInfoData = addInformations(encodedString);
-        int[] encodedFilledData = fillSequence(encodedInfoData, codeWordsLength);
-        int[] encodedECCData = addErrorCorrection(encodedFilledData, ECCLength);
+	/**
+	 * Encode a string in byte mode for a given version and error correction level
+	 * 
+	 * @param input
+	 *            The string to encode, truncated to the capacity of the version and level
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @return the bits of the interleaved data and error correction codewords
+	 */
+	public static boolean[] byteModeEncoding(String input, int version, CorrectionLvl level) {
+		return byteModeEncoding(input, version, level, new EncodingWorkspace()).toBooleanArray();
+	}
 
-        return bytesToBinaryArray(encodedECCData);
+	/**
+	 * Encode a string in byte mode for a given version and error correction level, every
+	 * stage appending to the buffers of a workspace
+	 * 
+	 * @param input
+	 *            The string to encode, truncated to the capacity of the version and level
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @param workspace
+	 *            the buffers to use, which hold the result
+	 * @return the interleaved data and error correction codewords, owned by the workspace
+	 */
+	public static BitBuffer byteModeEncoding(CharSequence input, int version, CorrectionLvl level, EncodingWorkspace workspace) {
+		int maxInputLength = QRCodeInfos.getMaxInputLength(version, level);
+		BitBuffer data = workspace.data;
+		data.clear();
+		data.ensureCapacity(QRCodeInfos.getCodeWordsLength(version, level) * 8);
+
+		addInformations(maxInputLength, version, data);
+		encodeString(input, maxInputLength, data);
+		data.append(0, 4);
+		fillSequence(data, QRCodeInfos.getCodeWordsLength(version, level));
+		workspace.setResult(version, level);
+		return addBlockErrorCorrection(data, version, level, workspace);
+	}
+
+	/**
+	 * Encode a string in the smallest version that can hold it, with error correction
+	 * level L or better
+	 * 
+	 * @param input
+	 *            The string to encode
+	 * @return the encoded codewords with the chosen version and level
+	 */
+	public static EncodedData encode(String input) {
+		return encode(input, CorrectionLvl.L, true);
+	}
+
+	/**
+	 * Encode a string in the smallest version that can hold it at the given error
+	 * correction level. The string is split in numeric, alphanumeric, byte and Kanji
+	 * segments giving the shortest bit stream, see {@link SegmentEncoding}, and the version
+	 * is found with a binary search in the capacity tables, without trying to encode it.
+	 * A string with characters outside ISO-8859-1 and Shift JIS is encoded in UTF-8.
+	 * 
+	 * @param input
+	 *            The string to encode
+	 * @param level
+	 *            the lowest acceptable error correction level
+	 * @param boostLevel
+	 *            true to use the highest error correction level that still fits in the
+	 *            chosen version
+	 * @return the encoded codewords with the chosen version and level
+	 * @throws IllegalArgumentException
+	 *             if the input is not valid UTF-16, or if it is too long for a version 40
+	 *             QR code of the given level
+	 */
+	public static EncodedData encode(String input, CorrectionLvl level, boolean boostLevel) {
+		return SegmentEncoding.encode(input, level, boostLevel);
 	}
 
 	/**
@@ -33,14 +110,40 @@ public final class DataEncoding {
 	 *         truncated to fit the version capacity
 	 */
 	public static int[] encodeString(String input, int maxLength) {
-		byte[] arrayBytes = input.getBytes(StandardCharsets.ISO_8859_1);
-		int[] arrayInt = new int[maxLength];
+		BitBuffer buffer = new BitBuffer(maxLength * 8);
+		encodeString(input, maxLength, buffer);
+		return buffer.toCodewords();
+	}
 
-		for(int i = 0; i < arrayBytes.length && i < maxLength; i++){
-			arrayInt[i] = arrayBytes[i] & 0xFF;
+	/**
+	 * Append a string in ISO-8859-1 to a buffer, exactly maxLength bytes long: the string
+	 * is truncated or followed by zeros. The characters outside ISO-8859-1 are replaced by
+	 * '?', once per surrogate pair.
+	 * 
+	 * @param input
+	 *            The string to convert to ISO-8859-1
+	 * @param maxLength
+	 *            The number of bytes to append
+	 * @param buffer
+	 *            the buffer receiving the bytes
+	 */
+	public static void encodeString(CharSequence input, int maxLength, BitBuffer buffer) {
+		buffer.ensureCapacity(buffer.getLength() + maxLength * 8);
+		int written = 0;
+		for (int i = 0; i < input.length() && written < maxLength; i++, written++) {
+			char c = input.charAt(i);
+			if (c <= 0xFF) {
+				buffer.append(c, 8);
+			} else {
+				buffer.append('?', 8);
+				if (Character.isHighSurrogate(c) && i + 1 < input.length() && Character.isLowSurrogate(input.charAt(i + 1))) {
+					++i;
+				}
+			}
+		}
+		for (; written < maxLength; written++) {
+			buffer.append(0, 8);
 		}
-
-		return arrayInt;
 	}
 
 	/**
@@ -51,23 +154,41 @@ public final class DataEncoding {
 	 * @return The input bytes with an header giving the type and size of the data
 	 */
 	public static int[] addInformations(int[] inputBytes) {
-		int prefix = 0b0100;
-		int size = inputBytes.length;
-		int[] infoEncodedData = new int[size+2];
-
-		for(int i = 0; i <= size+1; i++){
-			if(i == 0){
-				infoEncodedData[i] = (prefix << 4) | (size >> 4);
-			} else if(i == 1){
-				infoEncodedData[i] = (size&0xF) << 4 | inputBytes[0] >> 4;
-			} else if(i == (size+1)){
-				infoEncodedData[i] = (inputBytes[i-2]&0xF) << 4;
-			} else {
-				infoEncodedData[i] = (inputBytes[i-2]&0xF) << 4 | inputBytes[i-1] >> 4;
-			}
-		}
+		return addInformations(inputBytes, 1);
+	}
 
-		return infoEncodedData;
+	/**
+	 * Add the information header of the byte mode, whose character count takes 8 bits up
+	 * to version 9 and 16 bits from version 10 on, and concatenate the bytes to it
+	 * 
+	 * @param inputBytes
+	 *            the data byte sequence
+	 * @param version
+	 *            the version of the QR code
+	 * @return The input bytes with an header giving the type and size of the data
+	 */
+	public static int[] addInformations(int[] inputBytes, int version) {
+		BitBuffer buffer = new BitBuffer(inputBytes.length * 8 + 24);
+		addInformations(inputBytes.length, version, buffer);
+		buffer.appendCodewords(inputBytes, 0, inputBytes.length);
+		buffer.append(0, 4);
+		return buffer.toCodewords();
+	}
+
+	/**
+	 * Append the information header of the byte mode: the mode indicator and the number of
+	 * bytes, on 8 bits up to version 9 and 16 bits from version 10 on
+	 * 
+	 * @param size
+	 *            the number of bytes that will follow
+	 * @param version
+	 *            the version of the QR code
+	 * @param buffer
+	 *            the buffer receiving the header
+	 */
+	public static void addInformations(int size, int version, BitBuffer buffer) {
+		buffer.append(QRCodeInfos.Mode.BYTE.getIndicator(), 4);
+		buffer.append(size, QRCodeInfos.getCountBits(version));
 	}
 
 	/**
@@ -82,27 +203,30 @@ public final class DataEncoding {
 	 *         bytes 236,17
 	 */
 	public static int[] fillSequence(int[] encodedData, int finalLength) {
-        if(encodedData.length >= finalLength){
-            return encodedData;
-        } else {
-            int[] filledEncodedData = new int[finalLength];
-            int numbersAdded = 0;
-
-            for(int i = 0; i < finalLength; i++){
-                if(i < encodedData.length){
-                    filledEncodedData[i] = encodedData[i];
-                } else {
-                    if(numbersAdded % 2 == 0){
-                        filledEncodedData[i] = 236;
-                    } else {
-                        filledEncodedData[i] = 17;
-                    }
-                    ++numbersAdded;
-                }
-            }
-
-            return filledEncodedData;
-        }
+		if (encodedData.length >= finalLength) {
+			return encodedData;
+		}
+		BitBuffer buffer = new BitBuffer(finalLength * 8);
+		buffer.appendCodewords(encodedData, 0, encodedData.length);
+		fillSequence(buffer, finalLength);
+		return buffer.toCodewords();
+	}
+
+	/**
+	 * Complete the last codeword of a buffer with zeros, then add padding bytes until it
+	 * holds finalLength codewords
+	 * 
+	 * @param buffer
+	 *            the buffer to pad
+	 * @param finalLength
+	 *            the minimum number of codewords of the buffer
+	 */
+	public static void fillSequence(BitBuffer buffer, int finalLength) {
+		buffer.append(0, (8 - (buffer.getLength() & 7)) & 7);
+		buffer.ensureCapacity(finalLength * 8);
+		for (int padding = 0; buffer.getCodewordCount() < finalLength; padding++) {
+			buffer.append(padding % 2 == 0 ? 236 : 17, 8);
+		}
 	}
 
 	/**
@@ -115,42 +239,146 @@ public final class DataEncoding {
 	 * @return the original data concatenated with the error correction
 	 */
 	public static int[] addErrorCorrection(int[] encodedData, int eccLength) {
-        int[] eccEncodedData = new int[encodedData.length + eccLength];
-        int[] eccArray = ErrorCorrectionEncoding.encode(encodedData, eccLength);
-        int eccDataAdded = 0;
-
-        for(int i = 0; i < eccEncodedData.length; i++){
-            if(i < encodedData.length){
-                eccEncodedData[i] = encodedData[i];
-            } else {
-                eccEncodedData[i] = eccArray[eccDataAdded];
-                ++eccDataAdded;
-            }
-        }
-
+		int[] eccEncodedData = Arrays.copyOf(encodedData, encodedData.length + eccLength);
+		ErrorCorrectionEncoding.encode(encodedData, 0, encodedData.length, eccEncodedData, encodedData.length, eccLength);
 		return eccEncodedData;
 	}
 
+	/**
+	 * Split the data codewords of a version in blocks, compute the error correction of each
+	 * block and interleave them: the first codeword of every block, then the second one and
+	 * so on, followed by the error correction codewords interleaved the same way. The first
+	 * blocks are one data codeword shorter than the last ones when the codewords cannot be
+	 * split evenly. From {@link #PARALLEL_ECC_VERSION} on, the blocks are encoded in parallel.
+	 * 
+	 * @param encodedData
+	 *            The data codewords of the version, padding included
+	 * @param version
+	 *            the version of the QR code
+	 * @return the interleaved data followed by the interleaved error correction
+	 */
+	public static int[] addBlockErrorCorrection(int[] encodedData, int version) {
+		return addBlockErrorCorrection(encodedData, version, CorrectionLvl.L);
+	}
+
+	/**
+	 * Split the data codewords of a version and error correction level in blocks, compute
+	 * the error correction of each block and interleave them, as
+	 * {@link #addBlockErrorCorrection(int[], int)}
+	 * 
+	 * @param encodedData
+	 *            The data codewords of the version and level, padding included
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @return the interleaved data followed by the interleaved error correction
+	 */
+	public static int[] addBlockErrorCorrection(int[] encodedData, int version, CorrectionLvl level) {
+		return addBlockErrorCorrection(BitBuffer.of(encodedData), version, level, new EncodingWorkspace(), PARALLEL_ECC_VERSION).toCodewords();
+	}
+
+	/**
+	 * Split the data codewords of a version and error correction level in blocks, compute
+	 * the error correction of each block and interleave them, as
+	 * {@link #addBlockErrorCorrection(int[], int)}. The error correction is computed in the
+	 * buffer of the workspace, and the codewords are interleaved into its codewords buffer.
+	 * The blocks are encoded one after the other on the calling thread, which allocates
+	 * nothing once the workspace has grown.
+	 * 
+	 * @param data
+	 *            The data codewords of the version and level, padding included. It must not
+	 *            be the codewords buffer of the workspace
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @param workspace
+	 *            the buffers to use
+	 * @return the interleaved data followed by the interleaved error correction, owned by
+	 *         the workspace
+	 */
+	public static BitBuffer addBlockErrorCorrection(BitBuffer data, int version, CorrectionLvl level, EncodingWorkspace workspace) {
+		return addBlockErrorCorrection(data, version, level, workspace, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Split the data codewords in blocks, compute the error correction of each block and
+	 * interleave them in the buffers of a workspace, as
+	 * {@link #addBlockErrorCorrection(BitBuffer, int, CorrectionLvl, EncodingWorkspace)},
+	 * encoding the blocks concurrently on the common pool for the larger versions
+	 * 
+	 * @param data
+	 *            The data codewords of the version and level, padding included. It must not
+	 *            be the codewords buffer of the workspace
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @param workspace
+	 *            the buffers to use
+	 * @param parallelVersion
+	 *            the smallest version whose blocks are encoded concurrently,
+	 *            Integer.MAX_VALUE to always encode them on the calling thread
+	 * @return the interleaved data followed by the interleaved error correction, owned by
+	 *         the workspace
+	 */
+	public static BitBuffer addBlockErrorCorrection(BitBuffer data, int version, CorrectionLvl level, EncodingWorkspace workspace, int parallelVersion) {
+		int blocks = QRCodeInfos.getBlockCount(version, level);
+		int blockECCLength = QRCodeInfos.getBlockECCLength(version, level);
+		int dataLength = QRCodeInfos.getCodeWordsLength(version, level);
+		if (data.getLength() != dataLength * 8) {
+			throw new IllegalArgumentException("Version " + version + "-" + level + " holds " + dataLength + " data codewords, not " + data.getLength() / 8.0);
+		}
+
+		int[] encodedData = data.codewords;
+		int shortLength = dataLength / blocks;
+		int shortBlocks = blocks - dataLength % blocks;
+		int[] ecc = workspace.ecc(blocks * blockECCLength);
+		if (version >= parallelVersion) {
+			IntStream.range(0, blocks).parallel().forEach(block -> ErrorCorrectionEncoding.encode(encodedData, blockOffset(block, shortLength, shortBlocks),
+					block < shortBlocks ? shortLength : shortLength + 1, ecc, block * blockECCLength, blockECCLength));
+		} else {
+			for (int block = 0; block < blocks; block++) {
+				ErrorCorrectionEncoding.encode(encodedData, blockOffset(block, shortLength, shortBlocks),
+						block < shortBlocks ? shortLength : shortLength + 1, ecc, block * blockECCLength, blockECCLength);
+			}
+		}
+
+		BitBuffer interleaved = workspace.codewords;
+		interleaved.clear();
+		interleaved.ensureCapacity(QRCodeInfos.getTotalCodeWordsLength(version) * 8);
+		for (int i = 0; i <= shortLength; i++) {
+			for (int block = (i == shortLength ? shortBlocks : 0); block < blocks; block++) {
+				interleaved.append(encodedData[blockOffset(block, shortLength, shortBlocks) + i], 8);
+			}
+		}
+		for (int i = 0; i < blockECCLength; i++) {
+			for (int block = 0; block < blocks; block++) {
+				interleaved.append(ecc[block * blockECCLength + i], 8);
+			}
+		}
+		return interleaved;
+	}
+
+	private static int blockOffset(int block, int shortLength, int shortBlocks) {
+		return block * shortLength + Math.max(0, block - shortBlocks);
+	}
+
 	/**
 	 * Encode the byte array into a binary array represented with boolean using the
-	 * most significant bit first.
+	 * most significant bit first. The array is left unchanged.
 	 * 
 	 * @param data
 	 *            an array of bytes
 	 * @return a boolean array representing the data in binary
 	 */
 	public static boolean[] bytesToBinaryArray(int[] data) {
-        boolean[] binaryArray = new boolean[data.length*8];
-
-        for(int i = 0; i < data.length; i++){
-            int bitsLeft = 7;
-            while(data[i] > 0){
-                binaryArray[bitsLeft + (i*8)] = (data[i] % 2 == 1);
-                data[i] /= 2;
+		boolean[] binaryArray = new boolean[data.length*8];
 
-                --bitsLeft;
-            }
-        }
+		for(int i = 0; i < binaryArray.length; i++){
+			binaryArray[i] = ((data[i >>> 3] >>> (7 - (i & 7))) & 1) != 0;
+		}
 
 		return binaryArray;
 	}
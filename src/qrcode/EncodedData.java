@@ -0,0 +1,42 @@
+package qrcode;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+/**
+ * Codewords of a QR code, data and error correction interleaved, together with the
+ * version and error correction level they were encoded for.
+ */
+public final class EncodedData {
+
+	private final int version;
+	private final CorrectionLvl level;
+	private final boolean[] bits;
+
+	EncodedData(int version, CorrectionLvl level, boolean[] bits) {
+		this.version = version;
+		this.level = level;
+		this.bits = bits;
+	}
+
+	/**
+	 * @return the version of the QR code
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the error correction level of the QR code
+	 */
+	public CorrectionLvl getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the bits of the codewords, most significant bit first, as expected by
+	 *         {@link MatrixConstruction#renderQRCodeMatrix(int, CorrectionLvl, boolean[], int)}
+	 */
+	public boolean[] getBits() {
+		return bits;
+	}
+}
@@ -0,0 +1,389 @@
+package qrcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+/**
+ * Encoding of texts split in four stages, each run by its own threads: the segments and
+ * data codewords, the error correction, the placement and masking of the modules, and the
+ * rendering of the image.
+ *
+ * The stages are linked by bounded queues. A stage whose queue is full blocks the stage
+ * before it, and {@link #submit(CharSequence)} blocks once the first queue is full, so
+ * the texts waiting in the pipeline never exceed the capacity of the queues. The number
+ * of threads of each stage is chosen separately, and {@link #getStats()} tells how full
+ * the queues are and how busy the threads are.
+ *
+ * Closing the pipeline lets the texts already submitted go through, then stops the
+ * threads. A thread that dies, from an error or an interrupt, fails the text it was
+ * working on; when the last thread of a stage stops, the texts still queued for it fail
+ * and the next stage is told to stop in turn, so every future completes and closing never
+ * waits forever.
+ */
+public final class EncodingPipeline implements AutoCloseable {
+
+	/**
+	 * The stages of the pipeline, in order
+	 */
+	public enum Stage {
+		SEGMENT, ERROR_CORRECTION, PLACEMENT, RENDER
+	}
+
+	private static final Stage[] STAGES = Stage.values();
+
+	/*
+	 * Item telling the threads of a stage to stop, once all the items before it are done
+	 */
+	private static final Item END = new Item(null);
+
+	/*
+	 * Time waited for room in a queue before checking again that its stage still runs
+	 */
+	private static final long OFFER_MILLIS = 10;
+
+	private final QrEncoder encoder;
+	private final StageWorkers[] workers = new StageWorkers[STAGES.length];
+	private final long startNanos = System.nanoTime();
+	private volatile boolean closed;
+
+	/**
+	 * Create a pipeline and start its threads
+	 *
+	 * @param encoder
+	 *            the encoder whose settings are used
+	 * @param threads
+	 *            the number of threads of each stage, in the order of {@link Stage}
+	 * @param queueCapacity
+	 *            the number of items the queue in front of each stage can hold
+	 */
+	public EncodingPipeline(QrEncoder encoder, int[] threads, int queueCapacity) {
+		this.encoder = Objects.requireNonNull(encoder);
+		if (threads.length != STAGES.length) {
+			throw new IllegalArgumentException("A number of threads is needed for each of the " + STAGES.length + " stages");
+		}
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("The queues have to hold at least one item");
+		}
+		for (int stage = STAGES.length - 1; stage >= 0; stage--) {
+			if (threads[stage] < 1) {
+				throw new IllegalArgumentException("The stage " + STAGES[stage] + " needs at least one thread");
+			}
+			StageWorkers next = stage + 1 < STAGES.length ? workers[stage + 1] : null;
+			workers[stage] = new StageWorkers(STAGES[stage], threads[stage], queueCapacity, next);
+		}
+		for (StageWorkers stage : workers) {
+			stage.start();
+		}
+	}
+
+	/**
+	 * Submit a text to the pipeline, waiting while the first queue is full
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @return a future completed with the matrix of {@link QrEncoder#render(CharSequence)},
+	 *         or exceptionally if the text cannot be encoded
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 * @throws IllegalStateException
+	 *             if the pipeline is closed, or its first stage has stopped
+	 */
+	public CompletableFuture<int[][]> submit(CharSequence input) throws InterruptedException {
+		Item item = new Item(Objects.requireNonNull(input));
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The pipeline is closed");
+			}
+			if (!workers[0].offer(item)) {
+				throw new IllegalStateException("The stage " + STAGES[0] + " has stopped");
+			}
+		}
+		return item.result;
+	}
+
+	/**
+	 * @return the state of each stage, in the order of {@link Stage}
+	 */
+	public List<StageStats> getStats() {
+		long elapsed = System.nanoTime() - startNanos;
+		List<StageStats> stats = new ArrayList<>(workers.length);
+		for (StageWorkers stage : workers) {
+			stats.add(stage.stats(elapsed));
+		}
+		return Collections.unmodifiableList(stats);
+	}
+
+	/**
+	 * Let the texts already submitted go through the pipeline, then stop its threads. The
+	 * wait is not cut short by an interrupt: the interrupt status of the thread is set
+	 * again once the threads have stopped.
+	 */
+	@Override
+	public void close() {
+		boolean interrupted;
+		synchronized (this) {
+			interrupted = !closed && workers[0].end();
+			closed = true;
+		}
+		for (StageWorkers stage : workers) {
+			for (Thread thread : stage.threads) {
+				while (true) {
+					try {
+						thread.join();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Run the work of a stage on an item
+	 */
+	private void process(Stage stage, Item item, EncodingWorkspace workspace) {
+		switch (stage) {
+			case SEGMENT:
+				encoder.chooseVersion(item.input, workspace);
+				item.version = workspace.getVersion();
+				item.level = workspace.getLevel();
+				item.bits = encoder.writeData(item.input, item.version, item.level, workspace).copy();
+				break;
+			case ERROR_CORRECTION:
+				// on the thread of the stage, so that its utilisation shows the whole cost
+				item.bits = DataEncoding.addBlockErrorCorrection(item.bits, item.version, item.level, workspace, Integer.MAX_VALUE).copy();
+				break;
+			case PLACEMENT:
+				item.code = encoder.place(item.version, item.level, item.bits, Integer.MAX_VALUE);
+				item.bits = null;
+				break;
+			case RENDER:
+				item.result.complete(encoder.render(item.code));
+				break;
+		}
+	}
+
+	/*
+	 * A text going through the pipeline, with what the stages produced so far
+	 */
+	private static final class Item {
+		final CharSequence input;
+		final CompletableFuture<int[][]> result = new CompletableFuture<>();
+		int version;
+		CorrectionLvl level;
+		BitBuffer bits;
+		QrCode code;
+
+		Item(CharSequence input) {
+			this.input = input;
+		}
+	}
+
+	/*
+	 * The threads of a stage and the queue they take their items from
+	 */
+	private final class StageWorkers {
+		final Stage stage;
+		final BlockingQueue<Item> queue;
+		final Thread[] threads;
+		final StageWorkers next;
+		final AtomicInteger running;
+		final AtomicLong busyNanos = new AtomicLong();
+		final AtomicLong processed = new AtomicLong();
+
+		StageWorkers(Stage stage, int threadCount, int queueCapacity, StageWorkers next) {
+			this.stage = stage;
+			this.queue = new ArrayBlockingQueue<>(queueCapacity);
+			this.next = next;
+			this.threads = new Thread[threadCount];
+			this.running = new AtomicInteger(threadCount);
+			for (int i = 0; i < threadCount; i++) {
+				threads[i] = new Thread(this::work, "qrcode-" + stage.name().toLowerCase() + "-" + i);
+				threads[i].setDaemon(true);
+			}
+		}
+
+		void start() {
+			for (Thread thread : threads) {
+				thread.start();
+			}
+		}
+
+		/**
+		 * Queue an item, waiting for room as long as a thread of the stage runs
+		 *
+		 * @return false if the stage has stopped and the item was not queued
+		 */
+		boolean offer(Item item) throws InterruptedException {
+			while (running.get() > 0) {
+				if (queue.offer(item, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+					// the last thread may have stopped before taking it
+					return running.get() > 0 || !queue.remove(item);
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Tell every thread of the stage to stop after the items already queued, without
+		 * giving up when interrupted
+		 *
+		 * @return true if the thread was interrupted meanwhile
+		 */
+		boolean end() {
+			boolean interrupted = false;
+			for (int i = 0; i < threads.length; i++) {
+				while (true) {
+					try {
+						offer(END);
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			return interrupted;
+		}
+
+		private void work() {
+			EncodingWorkspace workspace = new EncodingWorkspace();
+			try {
+				while (true) {
+					Item item = queue.take();
+					if (item == END) {
+						break;
+					}
+					long start = System.nanoTime();
+					boolean passed = false;
+					try {
+						process(stage, item, workspace);
+						passed = true;
+					} catch (Throwable e) {
+						item.result.completeExceptionally(e);
+					}
+					busyNanos.addAndGet(System.nanoTime() - start);
+					processed.incrementAndGet();
+					if (passed && next != null) {
+						forward(item);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				// the last thread to stop fails what is left and passes the end on
+				if (running.decrementAndGet() == 0) {
+					for (Item item = queue.poll(); item != null; item = queue.poll()) {
+						if (item != END) {
+							item.result.completeExceptionally(new IllegalStateException("The stage " + stage + " has stopped"));
+						}
+					}
+					if (next != null && next.end()) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Pass an item to the next stage, or fail it if that stage has stopped
+		 */
+		private void forward(Item item) throws InterruptedException {
+			try {
+				if (!next.offer(item)) {
+					item.result.completeExceptionally(new IllegalStateException("The stage " + next.stage + " has stopped"));
+				}
+			} catch (InterruptedException e) {
+				item.result.completeExceptionally(e);
+				throw e;
+			}
+		}
+
+		StageStats stats(long elapsedNanos) {
+			double utilisation = elapsedNanos <= 0 ? 0 : (double) busyNanos.get() / (elapsedNanos * threads.length);
+			return new StageStats(stage, threads.length, queue.size(), queue.size() + queue.remainingCapacity(), processed.get(), utilisation);
+		}
+	}
+
+	/**
+	 * State of a stage of the pipeline at a given time
+	 */
+	public static final class StageStats {
+		private final Stage stage;
+		private final int threads;
+		private final int queueDepth;
+		private final int queueCapacity;
+		private final long processed;
+		private final double utilisation;
+
+		StageStats(Stage stage, int threads, int queueDepth, int queueCapacity, long processed, double utilisation) {
+			this.stage = stage;
+			this.threads = threads;
+			this.queueDepth = queueDepth;
+			this.queueCapacity = queueCapacity;
+			this.processed = processed;
+			this.utilisation = utilisation;
+		}
+
+		/**
+		 * @return the stage
+		 */
+		public Stage getStage() {
+			return stage;
+		}
+
+		/**
+		 * @return the number of threads of the stage
+		 */
+		public int getThreads() {
+			return threads;
+		}
+
+		/**
+		 * @return the number of items waiting in the queue of the stage
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * @return the number of items the queue of the stage can hold
+		 */
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		/**
+		 * @return the number of items the stage has processed
+		 */
+		public long getProcessed() {
+			return processed;
+		}
+
+		/**
+		 * @return the share of the time the threads of the stage spent working since the
+		 *         pipeline started, between 0 and 1
+		 */
+		public double getUtilisation() {
+			return utilisation;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d threads, queue %d/%d, %d processed, %.0f%% busy", stage, threads, queueDepth, queueCapacity, processed, utilisation * 100);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package qrcode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+/**
+ * Buffers reused from one encoding to the next.
+ *
+ * An encoding writes the data codewords, the error correction and the interleaved
+ * codewords into the arrays of the workspace, which grow to the largest symbol encoded
+ * and are then kept. Once warmed up, encoding with the same workspace allocates nothing,
+ * except when the error correction blocks are encoded concurrently and for the view of
+ * the text wrapped around each UTF-8 segment.
+ *
+ * The UTF-8 encoder of the byte segments is one of these buffers too, created the first
+ * time a workspace writes a UTF-8 segment, so that it is pooled with the workspace rather
+ * than tied to a thread.
+ *
+ * A workspace is not thread safe: each thread needs its own. The result of an encoding
+ * stays valid until the next encoding with the same workspace.
+ */
+public final class EncodingWorkspace {
+
+	final BitBuffer data = new BitBuffer();
+	final BitBuffer codewords = new BitBuffer();
+	final int[] rangeBits = new int[3];
+	final int[] header = new int[QRCodeInfos.Mode.values().length];
+	final int[] costs = new int[header.length];
+	final int[] direct = new int[header.length];
+	int[] ecc = new int[0];
+	byte[] modes = new byte[0];
+	byte[] choices = new byte[0];
+	private Utf8Encoder utf8Encoder;
+
+	private int version;
+	private CorrectionLvl level;
+
+	/**
+	 * Create an empty workspace
+	 */
+	public EncodingWorkspace() {
+	}
+
+	/**
+	 * @return the version of the last encoding
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the error correction level of the last encoding
+	 */
+	public CorrectionLvl getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the interleaved data and error correction codewords of the last encoding
+	 */
+	public BitBuffer getCodewords() {
+		return codewords;
+	}
+
+	void setResult(int version, CorrectionLvl level) {
+		this.version = version;
+		this.level = level;
+	}
+
+	int[] ecc(int length) {
+		if (ecc.length < length) {
+			ecc = new int[length];
+		}
+		return ecc;
+	}
+
+	byte[] modes(int length) {
+		if (modes.length < length) {
+			modes = new byte[length];
+		}
+		return modes;
+	}
+
+	byte[] choices(int length) {
+		if (choices.length < length) {
+			choices = new byte[length];
+		}
+		return choices;
+	}
+
+	Utf8Encoder utf8Encoder() {
+		if (utf8Encoder == null) {
+			utf8Encoder = new Utf8Encoder();
+		}
+		return utf8Encoder;
+	}
+
+	/*
+	 * UTF-8 encoder and output buffer, reused by every segment the workspace writes
+	 */
+	static final class Utf8Encoder {
+		private static final int BUFFER_SIZE = 256;
+
+		final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+}
@@ -5,6 +5,9 @@ import java.awt.Font;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -163,7 +166,32 @@ public final class Helpers {
 	public static void writeMatrix(String name, int[][] matrix) {
 		write(name, matrixToImage(matrix));
 	}
-	
+
+	/**
+	 * Write a QR code into a 1 bit image file, with its quiet zone. The image is streamed
+	 * from the modules by a {@link PngWriter}, without building a BufferedImage.
+	 * @param name
+	 *            the name of the file
+	 * @param code
+	 *            the QR code to write
+	 * @param scale
+	 *            the number of pixels on a side of a module
+	 */
+	public static void writeCode(String name, QrCode code, int scale) {
+		String projectPath = System.getProperty("user.dir");
+		String path = projectPath + SEP + PATH_HEADER + name;
+		if (!name.contains(".png")) {
+			path = path + ".png";
+		}
+		try (PngWriter writer = new PngWriter(scale, BORDER / SCALE);
+				FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			writer.write(code, channel);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/*
 	 * ================================================ 
 	 * 				PRIVATE METHODS
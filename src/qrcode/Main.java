@@ -1,17 +1,21 @@
 package qrcode;
 
+import qrcode.QRCodeInfos.CorrectionLvl;
+
 public class Main {
 
 	/*
 	 * Input
-	 * Write you message here. Accents are permitted, but not all characters. See the norm ISO/CEI 8859-1 on wikipedia for more info
+	 * Write you message here. Any character is permitted, the ones outside ISO/CEI 8859-1 and Shift JIS are encoded in UTF-8
 	 */
 	public static final String INPUT =  "The quick brown fox jumps over the lazy dog";
 
 	/*
 	 * Parameters
+	 * The version is the smallest one that can hold the input. The error correction level is
+	 * the highest one that still fits in that version, at least LEVEL
 	 */
-	public static final int VERSION = 4;
+	public static final CorrectionLvl LEVEL = CorrectionLvl.L;
 	public static final int MASK = 0;
 	public static final int SCALING = 20;
 
@@ -20,12 +24,12 @@ public class Main {
 		/*
 		 * Encoding
 		 */
-		boolean[] encodedData = DataEncoding.byteModeEncoding(INPUT, VERSION);
+		QrEncoder encoder = new QrEncoder().withLevel(LEVEL).withMask(MASK);
 
 		/*
 		 * image
 		 */
-		int[][] qrCode = MatrixConstruction.renderQRCodeMatrix(VERSION, encodedData,MASK);
+		int[][] qrCode = encoder.render(INPUT);
 		
 		/*
 		 * Visualization
@@ -0,0 +1,63 @@
+package qrcode;
+
+/**
+ * Result of the search of the best mask for a QR code: the chosen mask, the penalty score
+ * of every mask and the symbol masked with the chosen one.
+ */
+public final class MaskSelection {
+
+	private final int mask;
+	private final int[] scores;
+	private final BitMatrix symbol;
+	private final int pruned;
+
+	MaskSelection(int mask, int[] scores, BitMatrix symbol) {
+		this(mask, scores, symbol, 0);
+	}
+
+	MaskSelection(int mask, int[] scores, BitMatrix symbol, int pruned) {
+		this.mask = mask;
+		this.scores = scores;
+		this.symbol = symbol;
+		this.pruned = pruned;
+	}
+
+	/**
+	 * @return the mask with the lowest penalty score, the lowest id in case of a tie
+	 */
+	public int getMask() {
+		return mask;
+	}
+
+	/**
+	 * @return the penalty score of each mask, indexed by mask id. The score of a pruned
+	 *         mask is only a lower bound of its penalty
+	 */
+	public int[] getScores() {
+		return scores.clone();
+	}
+
+	/**
+	 * @param mask
+	 *            the mask id
+	 * @return the penalty score of the given mask
+	 */
+	public int getScore(int mask) {
+		return scores[mask];
+	}
+
+	/**
+	 * @return the symbol with the data masked by the chosen mask
+	 */
+	public BitMatrix getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * @return the number of masks whose scoring was stopped before all the rules were
+	 *         evaluated, because they could not beat the chosen mask anymore
+	 */
+	public int getPrunedCount() {
+		return pruned;
+	}
+}
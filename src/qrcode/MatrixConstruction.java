@@ -1,5 +1,12 @@
 package qrcode;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
 public class MatrixConstruction {
 
 	/*
@@ -20,6 +27,28 @@ public class MatrixConstruction {
 	public static final int finderPatternSize = 7;
 	public static final int alignmentPatternSize = 5;
 	public static final int timingPosition = 6;
+	private static final int FORMAT_LENGTH = 15;
+	private static final int VERSION_LENGTH = 18;
+
+	/*
+	 * Symbols holding only the function patterns and the format information, one per
+	 * version, correction level and mask. They are built on first use and only ever copied.
+	 */
+	private static final int MASKS = 8;
+	private static final int LEVELS = QRCodeInfos.CorrectionLvl.values().length;
+	private static final AtomicReferenceArray<BitMatrix> TEMPLATES = new AtomicReferenceArray<>(40*LEVELS*MASKS);
+
+	/*
+	 * Order in which the data modules of each version are filled, as bit offsets in the
+	 * bitplanes of a BitMatrix. Built on first use from the template of the version.
+	 */
+	private static final AtomicReferenceArray<int[]> PLACEMENTS = new AtomicReferenceArray<>(40);
+
+	/*
+	 * The 8 mask patterns of each version as bitplanes laid out like the modules of a
+	 * BitMatrix of the same size. Built on first use.
+	 */
+	private static final AtomicReferenceArray<long[][]> MASK_PLANES = new AtomicReferenceArray<>(40);
 
 	/**
 	 * Create the matrix of a QR code with the given data.
@@ -34,17 +63,34 @@ public class MatrixConstruction {
 	 * @return The matrix of the QR code
 	 */
 	public static int[][] renderQRCodeMatrix(int version, boolean[] data, int mask) {
+		return renderQRCodeMatrix(version, CorrectionLvl.L, data, mask);
+	}
+
+	/**
+	 * Create the matrix of a QR code with the given data and error correction level.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param level
+	 *            The error correction level the data was encoded with
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param mask
+	 *            The mask used on the data, between 0 and 7
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, CorrectionLvl level, boolean[] data, int mask) {
 
 		/*
 		 * PART 2
 		 */
-		int[][] matrix = constructMatrix(version, mask);
+		BitMatrix symbol = constructSymbol(version, level, mask);
 		/*
 		 * PART 3
 		 */
-		addDataInformation(matrix, data, mask);
+		addDataInformation(symbol, version, data, mask);
 
-		return matrix;
+		return symbol.toARGB();
 	}
 
 	/*
@@ -59,7 +105,7 @@ public class MatrixConstruction {
 	 * Create a matrix (2D array) ready to accept data for a given version and mask.
 	 * 
 	 * @param version
-	 *          The version number of QR code (has to be between 1 and 4 included)
+	 *          The version number of QR code (has to be between 1 and 40 included)
 	 * @param mask
 	 *          The mask id to use to mask the data modules. Has to be between 0
 	 *          and 7 included to have a valid matrix. If the mask id is not
@@ -69,21 +115,158 @@ public class MatrixConstruction {
 	 *         	initialized. The modules where the data should be remain empty.
 	 */
 	public static int[][] constructMatrix(int version, int mask) {
+		return constructMatrix(version, CorrectionLvl.L, mask);
+	}
+
+	/**
+	 * Create a matrix (2D array) ready to accept data for a given version, error
+	 * correction level and mask.
+	 * 
+	 * @param version
+	 *          The version number of QR code (has to be between 1 and 40 included)
+	 * @param level
+	 *          The error correction level written in the format information
+	 * @param mask
+	 *          The mask id to use to mask the data modules, between 0 and 7
+	 * @return	The QR Code with the patterns and format information modules
+	 *         	initialized. The modules where the data should be remain empty.
+	 */
+	public static int[][] constructMatrix(int version, CorrectionLvl level, int mask) {
 		int[][] matrix = initializeMatrix(version);
 		addFinderPatterns(matrix);
 		addAlignmentPatterns(matrix, version);
 		addTimingPatterns(matrix);
 		addDarkModule(matrix);
-		addFormatInformation(matrix, mask);
+		addFormatInformation(matrix, level, mask);
+		addVersionInformation(matrix, version);
 		return matrix;
 	}
 
+	/**
+	 * Create a packed symbol ready to accept data for a given version and mask.
+	 * 
+	 * @param version
+	 *          The version number of QR code (has to be between 1 and 40 included)
+	 * @param mask
+	 *          The mask id to use to mask the data modules
+	 * @return	The symbol with the patterns and format information modules
+	 *         	initialized and reserved. The modules where the data should be remain empty.
+	 */
+	public static BitMatrix constructSymbol(int version, int mask) {
+		return constructSymbol(version, CorrectionLvl.L, mask);
+	}
+
+	/**
+	 * Create a packed symbol ready to accept data for a given version, error correction
+	 * level and mask.
+	 * 
+	 * @param version
+	 *          The version number of QR code (has to be between 1 and 40 included)
+	 * @param level
+	 *          The error correction level written in the format information
+	 * @param mask
+	 *          The mask id to use to mask the data modules
+	 * @return	The symbol with the patterns and format information modules
+	 *         	initialized and reserved. The modules where the data should be remain empty.
+	 */
+	public static BitMatrix constructSymbol(int version, CorrectionLvl level, int mask) {
+		BitMatrix template = template(version, level, mask);
+		BitMatrix symbol = new BitMatrix(template.getSize());
+		symbol.copyFrom(template);
+		return symbol;
+	}
+
+	/**
+	 * Reset a packed symbol so that it is ready to accept data for a given version and mask.
+	 * 
+	 * @param version
+	 *          The version number of QR code (has to be between 1 and 40 included)
+	 * @param mask
+	 *          The mask id to use to mask the data modules
+	 * @param symbol
+	 *          The symbol to overwrite, of the size of the version
+	 */
+	public static void constructSymbol(int version, int mask, BitMatrix symbol) {
+		constructSymbol(version, CorrectionLvl.L, mask, symbol);
+	}
+
+	/**
+	 * Reset a packed symbol so that it is ready to accept data for a given version, error
+	 * correction level and mask.
+	 * 
+	 * @param version
+	 *          The version number of QR code (has to be between 1 and 40 included)
+	 * @param level
+	 *          The error correction level written in the format information
+	 * @param mask
+	 *          The mask id to use to mask the data modules
+	 * @param symbol
+	 *          The symbol to overwrite, of the size of the version
+	 */
+	public static void constructSymbol(int version, CorrectionLvl level, int mask, BitMatrix symbol) {
+		symbol.copyFrom(template(version, level, mask));
+	}
+
+	/**
+	 * Build in advance the templates, mask bitplanes and placement order of a version and
+	 * level, so that the symbols built afterwards only copy them
+	 * 
+	 * @param version
+	 *          The version of the QR code
+	 * @param level
+	 *          The error correction level
+	 */
+	public static void preloadTemplates(int version, CorrectionLvl level) {
+		for (int mask = 0; mask < MASKS; mask++) {
+			template(version, level, mask);
+			maskPlane(version, mask);
+		}
+		placement(version);
+	}
+
+	/**
+	 * Get the shared template of a version, level and mask, building it if this is its
+	 * first use. The returned symbol must not be modified.
+	 */
+	private static BitMatrix template(int version, CorrectionLvl level, int mask) {
+		checkVersion(version);
+		if (mask < 0 || mask >= MASKS) {
+			throw new IllegalArgumentException("The mask has to be between 0 and 7");
+		}
+		int key = ((version-1)*LEVELS + level.ordinal())*MASKS + mask;
+		BitMatrix template = TEMPLATES.get(key);
+		if (template == null) {
+			template = buildTemplate(version, level, mask);
+			if (!TEMPLATES.compareAndSet(key, null, template)) {
+				template = TEMPLATES.get(key);
+			}
+		}
+		return template;
+	}
+
+	private static void checkVersion(int version) {
+		if (version < 1 || version > 40) {
+			throw new IllegalArgumentException("The version has to be between 1 and 40");
+		}
+	}
+
+	private static BitMatrix buildTemplate(int version, CorrectionLvl level, int mask) {
+		BitMatrix symbol = new BitMatrix(QRCodeInfos.getMatrixSize(version));
+		addFinderPatterns(symbol);
+		addAlignmentPatterns(symbol, version);
+		addTimingPatterns(symbol);
+		addDarkModule(symbol);
+		addFormatInformation(symbol, level, mask);
+		addVersionInformation(symbol, version);
+		return symbol;
+	}
+
 	/**
 	 * Create an empty 2d array of integers of the size needed for a QR code of the
 	 * given version
 	 * 
 	 * @param version
-	 *            the version number of the qr code (has to be between 1 and 4
+	 *            the version number of the qr code (has to be between 1 and 40
 	 *            included
 	 * @return an empty matrix
 	 */
@@ -160,6 +343,27 @@ public class MatrixConstruction {
 		}
 	}
 
+	/**
+	 * Places any element represented as an array inside the given symbol and reserves
+	 * the modules it covers.
+	 *
+	 * @param symbol
+	 *         	The packed symbol where new elements will be added
+	 * @param element
+	 * 			The 2D array that will be added inside the given symbol
+	 * @param x
+	 * 			The x coordinate of the element inside the symbol
+	 * @param y
+	 * 			The y coordinate of the element inside the symbol
+	 */
+	public static void elementPlacer(BitMatrix symbol, int[][] element, int x, int y) {
+		for (int i=0; i<element.length; i++) {
+			for (int j=0; j<element.length; j++) {
+				symbol.setFunction(i+x, j+y, element[i][j] == B);
+			}
+		}
+	}
+
 	/**
 	 * Adds all finder patterns to the given matrix with a border of White modules.
 	 *
@@ -185,20 +389,88 @@ public class MatrixConstruction {
 	}
 
 	/**
-	 * Adds the alignment pattern to the given matrix if needed, does nothing for version 1
+	 * Adds all finder patterns to the given symbol with a border of White modules.
+	 *
+	 * @param symbol
+	 *            	The packed symbol where to add the patterns
+	 */
+	public static void addFinderPatterns(BitMatrix symbol) {
+		int[][] finderPattern = patternBuilder(finderPatternSize);
+		int[][] separator = separatorBuilder();
+		int matrixSize = symbol.getSize();
+
+        //TOP LEFT
+        elementPlacer(symbol, separator, 0, 0);
+        elementPlacer(symbol, finderPattern, 0, 0);
+
+        //TOP RIGHT
+        elementPlacer(symbol, separator, matrixSize-(finderPatternSize+1), 0);
+        elementPlacer(symbol, finderPattern, matrixSize-finderPatternSize, 0);
+
+        //BOTTOM LEFT
+        elementPlacer(symbol, separator, 0, matrixSize-(finderPatternSize+1));
+        elementPlacer(symbol, finderPattern, 0, matrixSize-finderPatternSize);
+	}
+
+	/**
+	 * Adds the alignment patterns to the given matrix if needed, does nothing for version 1.
+	 * The patterns are centered on every pair of the coordinates given by
+	 * {@link QRCodeInfos#getAlignmentPositions(int)}, except where they would overlap a
+	 * finder pattern
 	 *
 	 * @param matrix
 	 *            The 2D array to modify
 	 * @param version
-	 *            The version number of the QR code needs to be between 1 and 4
+	 *            The version number of the QR code needs to be between 1 and 40
 	 *            included
 	 */
 	public static void addAlignmentPatterns(int[][] matrix, int version) {
-		int matrixSize = matrix.length;
+		int[] positions = QRCodeInfos.alignmentPositions(version);
+		if (positions.length == 0) {
+			return;
+		}
+
+		int[][] alignmentPattern = patternBuilder(alignmentPatternSize);
+		int last = positions.length-1;
+		int offset = alignmentPatternSize/2;
+		for (int i=0; i<=last; i++) {
+			for (int j=0; j<=last; j++) {
+				boolean finder = (i==0 && j==0) || (i==0 && j==last) || (i==last && j==0);
+				if (!finder) {
+					elementPlacer(matrix, alignmentPattern, positions[i]-offset, positions[j]-offset);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the alignment patterns to the given symbol if needed, does nothing for version 1.
+	 * The patterns are centered on every pair of the coordinates given by
+	 * {@link QRCodeInfos#getAlignmentPositions(int)}, except where they would overlap a
+	 * finder pattern
+	 *
+	 * @param symbol
+	 *            The packed symbol to modify
+	 * @param version
+	 *            The version number of the QR code needs to be between 1 and 40
+	 *            included
+	 */
+	public static void addAlignmentPatterns(BitMatrix symbol, int version) {
+		int[] positions = QRCodeInfos.alignmentPositions(version);
+		if (positions.length == 0) {
+			return;
+		}
 
-		if (version>1) {
-			int[][] alignmentPattern = patternBuilder(alignmentPatternSize);
-			elementPlacer(matrix, alignmentPattern, matrixSize-9,matrixSize-9);
+		int[][] alignmentPattern = patternBuilder(alignmentPatternSize);
+		int last = positions.length-1;
+		int offset = alignmentPatternSize/2;
+		for (int i=0; i<=last; i++) {
+			for (int j=0; j<=last; j++) {
+				boolean finder = (i==0 && j==0) || (i==0 && j==last) || (i==last && j==0);
+				if (!finder) {
+					elementPlacer(symbol, alignmentPattern, positions[i]-offset, positions[j]-offset);
+				}
+			}
 		}
 	}
 
@@ -222,6 +494,21 @@ public class MatrixConstruction {
 		}
 	}
 
+	/**
+	 * Adds timing patterns the the given symbol.
+	 *
+	 * @param symbol
+	 *            The packed symbol to modify
+	 */
+	public static void addTimingPatterns(BitMatrix symbol) {
+		int matrixSize = symbol.getSize();
+
+		for (int i = (finderPatternSize+1); i < (matrixSize-finderPatternSize-1); i++) {
+			symbol.setFunction(timingPosition, i, i % 2 == 0);
+			symbol.setFunction(i, timingPosition, i % 2 == 0);
+		}
+	}
+
 	/**
 	 * Add the dark module to the given matrix.
 	 * 
@@ -234,6 +521,16 @@ public class MatrixConstruction {
 		matrix[8][matrixSize-8] = B;
 	}
 
+	/**
+	 * Add the dark module to the given symbol.
+	 * 
+	 * @param symbol
+	 *            The packed symbol to modify
+	 */
+	public static void addDarkModule(BitMatrix symbol){
+		symbol.setFunction(8, symbol.getSize()-8, true);
+	}
+
 	/**
 	 * Converts a boolean array to an array containing black and white colors in ARGB value.
 	 *
@@ -260,34 +557,157 @@ public class MatrixConstruction {
 	 *            The mask id
 	 */
 	public static void addFormatInformation(int[][] matrix, int mask) {
-		int [] formatInfoArray = ConvertBooleanToBW(QRCodeInfos.getFormatSequence(mask));
+		addFormatInformation(matrix, CorrectionLvl.L, mask);
+	}
+
+	/**
+	 * Add the format information of an error correction level and mask to the matrix
+	 *
+	 * @param matrix
+	 *            The 2-dimensional array representing the QR code to modify
+	 * @param level
+	 *            The error correction level
+	 * @param mask
+	 *            The mask id
+	 */
+	public static void addFormatInformation(int[][] matrix, CorrectionLvl level, int mask) {
+		int format = QRCodeInfos.getFormatWord(level, mask);
 		int rowIndex = 5;
 		int borderToFormatInfo = finderPatternSize + 1;
 		int matrixSize = matrix.length;
 
-		for (int i=0; i<formatInfoArray.length; i++) {
+		for (int i=0; i<FORMAT_LENGTH; i++) {
+			int color = ((format >>> (FORMAT_LENGTH-1-i)) & 1) != 0 ? B : W;
+			//TOP LEFT
+			if (i <= 5) {
+				matrix[i][borderToFormatInfo]=color;
+			} else if (i==6 || i==7) {
+				matrix[i+1][borderToFormatInfo]=color;
+			} else if (i==8){
+				matrix[borderToFormatInfo][7]=color;
+			} else {
+				matrix[borderToFormatInfo][rowIndex]=color;
+				--rowIndex;
+			}
+
+			//BOTTOM
+			if(i <= 6){
+				matrix[borderToFormatInfo][(matrixSize-1)-i]=color;
+			//TOP RIGHT
+			} else {
+				matrix[(matrixSize-borderToFormatInfo-7)+i][borderToFormatInfo]=color;
+			}
+		}
+	}
+
+	/**
+	 * Add the version information to the matrix, next to the bottom left and top right
+	 * finder patterns. Only the versions from 7 on have one, smaller versions are left
+	 * unchanged.
+	 *
+	 * @param matrix
+	 *            The 2-dimensional array representing the QR code to modify
+	 * @param version
+	 *            The version of the QR code
+	 */
+	public static void addVersionInformation(int[][] matrix, int version) {
+		if (version < 7) {
+			return;
+		}
+		int versionInfo = QRCodeInfos.getVersionWord(version);
+		int matrixSize = matrix.length;
+
+		for (int i=0; i<VERSION_LENGTH; i++) {
+			int color = ((versionInfo >>> i) & 1) != 0 ? B : W;
+			int near = i/3;
+			int far = matrixSize-11 + i%3;
+			//TOP RIGHT
+			matrix[far][near]=color;
+			//BOTTOM LEFT
+			matrix[near][far]=color;
+		}
+	}
+
+
+	/**
+	 * Add the format information to the symbol
+	 *
+	 * @param symbol
+	 *            The packed symbol to modify
+	 * @param mask
+	 *            The mask id
+	 */
+	public static void addFormatInformation(BitMatrix symbol, int mask) {
+		addFormatInformation(symbol, CorrectionLvl.L, mask);
+	}
+
+	/**
+	 * Add the format information of an error correction level and mask to the symbol
+	 *
+	 * @param symbol
+	 *            The packed symbol to modify
+	 * @param level
+	 *            The error correction level
+	 * @param mask
+	 *            The mask id
+	 */
+	public static void addFormatInformation(BitMatrix symbol, CorrectionLvl level, int mask) {
+		int format = QRCodeInfos.getFormatWord(level, mask);
+		int rowIndex = 5;
+		int borderToFormatInfo = finderPatternSize + 1;
+		int matrixSize = symbol.getSize();
+
+		for (int i=0; i<FORMAT_LENGTH; i++) {
+			boolean dark = ((format >>> (FORMAT_LENGTH-1-i)) & 1) != 0;
 			//TOP LEFT
 			if (i <= 5) {
-				matrix[i][borderToFormatInfo]=formatInfoArray[i];
+				symbol.setFunction(i, borderToFormatInfo, dark);
 			} else if (i==6 || i==7) {
-				matrix[i+1][borderToFormatInfo]=formatInfoArray[i];
+				symbol.setFunction(i+1, borderToFormatInfo, dark);
 			} else if (i==8){
-				matrix[borderToFormatInfo][7]=formatInfoArray[i];
+				symbol.setFunction(borderToFormatInfo, 7, dark);
 			} else {
-				matrix[borderToFormatInfo][rowIndex]=formatInfoArray[i];
+				symbol.setFunction(borderToFormatInfo, rowIndex, dark);
 				--rowIndex;
 			}
 
 			//BOTTOM
 			if(i <= 6){
-				matrix[borderToFormatInfo][(matrixSize-1)-i]=formatInfoArray[i];
+				symbol.setFunction(borderToFormatInfo, (matrixSize-1)-i, dark);
 			//TOP RIGHT
 			} else {
-				matrix[(matrixSize-borderToFormatInfo-7)+i][borderToFormatInfo]=formatInfoArray[i];
+				symbol.setFunction((matrixSize-borderToFormatInfo-7)+i, borderToFormatInfo, dark);
 			}
 		}
 	}
 
+	/**
+	 * Add the version information to the symbol. Only the versions from 7 on have one,
+	 * smaller versions are left unchanged.
+	 *
+	 * @param symbol
+	 *            The packed symbol to modify
+	 * @param version
+	 *            The version of the QR code
+	 */
+	public static void addVersionInformation(BitMatrix symbol, int version) {
+		if (version < 7) {
+			return;
+		}
+		int versionInfo = QRCodeInfos.getVersionWord(version);
+		int matrixSize = symbol.getSize();
+
+		for (int i=0; i<VERSION_LENGTH; i++) {
+			boolean dark = ((versionInfo >>> i) & 1) != 0;
+			int near = i/3;
+			int far = matrixSize-11 + i%3;
+			//TOP RIGHT
+			symbol.setFunction(far, near, dark);
+			//BOTTOM LEFT
+			symbol.setFunction(near, far, dark);
+		}
+	}
+
 
 	/*
 	 * =======================================================================
@@ -309,27 +729,31 @@ public class MatrixConstruction {
 	 * @return the color with the masking
 	 */
 	public static int maskColor(int col, int row, boolean dataBit, int masking) {
-		boolean[] maskList = {
-				(col+row) % 2 == 0,
-				row % 2 == 0,
-				col % 3 == 0,
-				(col + row) % 3 == 0,
-				((col/2) + (row/3)) % 2 == 0,
-				((col*row) % 2) + ((col*row) % 3) == 0,
-				(((col*row) % 2) + ((col*row) % 3)) % 2 == 0,
-				(((col+row) % 2) + ((col+row) % 3)) % 2 == 0
-		};
-
-		if(masking >= 0 && masking <= 7){
-			boolean isMasked = maskList[masking];
-
-			if((dataBit && !isMasked) || (!dataBit && isMasked)){
-				return B;
-			} else {
-				return W;
-			}
-		} else {
-			return dataBit ? B : W;
+		return dataBit ^ isMasked(col, row, masking) ? B : W;
+	}
+
+	/**
+	 * Evaluate the formula of a mask at the given coordinate
+	 * 
+	 * @param col
+	 *          x-coordinate
+	 * @param row
+	 *          y-coordinate
+	 * @param masking
+	 * 			The mask id, no module is masked if it is not between 0 and 7
+	 * @return true if the data bit at this coordinate has to be inverted
+	 */
+	public static boolean isMasked(int col, int row, int masking) {
+		switch(masking) {
+			case 0: return (col+row) % 2 == 0;
+			case 1: return row % 2 == 0;
+			case 2: return col % 3 == 0;
+			case 3: return (col + row) % 3 == 0;
+			case 4: return ((row/2) + (col/3)) % 2 == 0;
+			case 5: return ((col*row) % 2) + ((col*row) % 3) == 0;
+			case 6: return (((col*row) % 2) + ((col*row) % 3)) % 2 == 0;
+			case 7: return (((col+row) % 2) + ((col*row) % 3)) % 2 == 0;
+			default: return false;
 		}
 	}
 
@@ -395,47 +819,281 @@ public class MatrixConstruction {
 	}
 
 	/**
-	 * Checks whether a bit as already been written at a given point in a matrix
-	 *
-	 * @param matrix
-	 * 		The matrix where the verification has to be done
-	 * @param col
-	 * 		The coordinate "column" to check
-	 * @param row
-	 * 		The coordinate "row" to check
-	 * @return If a bit already exist or not as a boolean
+	 * Add the data bits into the modules of the symbol that are not reserved
+	 * 
+	 * @param symbol
+	 *            the packed symbol where the bits needs to be added
+	 * @param data
+	 *            the data to add
+	 * @param mask
+	 *            the mask id
 	 */
-	public static boolean bitExists(int[][] matrix, int col, int row){
-		if(alphaValue(matrix[col][row]) == 0xFF) {
-			return true;
-		} else {
-			return false;
+	public static void addDataInformation(BitMatrix symbol, boolean[] data, int mask) {
+		int[] placement = computePlacement(symbol);
+		placeData(symbol, placement, data);
+
+		int rowBits = symbol.stride << 6;
+		for (int offset : placement) {
+			if (isMasked(offset % rowBits, offset / rowBits, mask)) {
+				symbol.modules[offset >>> 6] ^= 1L << offset;
+			}
 		}
 	}
 
 	/**
-	 * Gives the alpha value in ARGB for a given bit
-	 *
-	 * @param bit
-	 * 		The bit for which we are looking at the alpha value
-	 * @return The alpha value in ARGB format as an integer
+	 * Add the data bits into a symbol built by {@link #constructSymbol(int, int)}, using the
+	 * cached placement order of the version
+	 * 
+	 * @param symbol
+	 *            the packed symbol where the bits needs to be added
+	 * @param version
+	 *            the version of the symbol
+	 * @param data
+	 *            the data to add
+	 * @param mask
+	 *            the mask id
 	 */
-	public static int alphaValue(int bit){
-		return ((bit >> 24)&0xFF);
+	public static void addDataInformation(BitMatrix symbol, int version, boolean[] data, int mask) {
+		placeData(symbol, placement(version), data);
+		if (mask >= 0 && mask < MASKS) {
+			applyMask(symbol, version, mask);
+		}
 	}
 
 	/**
-	 * Checks if the end of column of a given matrix has been reached
-	 *
-	 * @param matrixSize
-	 * 		The size of the matrix we want to verify
-	 * @param runCounter
-	 * 		The number of time the algorithm filling the matrix
-	 * 		has already run.
-	 * @return a boolean value representing if we are a the end of the column
-	 */
-	public static boolean endOfColumn(int matrixSize, int runCounter){
-		if(runCounter % matrixSize == 0){
+	 * Add the bits of a buffer into a symbol built by {@link #constructSymbol(int, int)},
+	 * using the cached placement order of the version
+	 * 
+	 * @param symbol
+	 *            the packed symbol where the bits needs to be added
+	 * @param version
+	 *            the version of the symbol
+	 * @param data
+	 *            the codewords to add, as returned by an {@link EncodingWorkspace}
+	 * @param mask
+	 *            the mask id
+	 */
+	public static void addDataInformation(BitMatrix symbol, int version, BitBuffer data, int mask) {
+		placeData(symbol, placement(version), data);
+		if (mask >= 0 && mask < MASKS) {
+			applyMask(symbol, version, mask);
+		}
+	}
+
+	/**
+	 * Invert the modules of a symbol that are selected by a mask and not reserved. This is
+	 * done a whole word of modules at a time with the precomputed mask bitplanes. Applying
+	 * the same mask twice restores the symbol.
+	 * 
+	 * @param symbol
+	 *            the packed symbol to mask
+	 * @param version
+	 *            the version of the symbol
+	 * @param mask
+	 *            the mask id, between 0 and 7
+	 */
+	public static void applyMask(BitMatrix symbol, int version, int mask) {
+		long[] plane = maskPlane(version, mask);
+		long[] modules = symbol.modules;
+		long[] reserved = symbol.reserved;
+		for (int i = 0; i < modules.length; i++) {
+			modules[i] ^= plane[i] & ~reserved[i];
+		}
+	}
+
+	/**
+	 * Read back the data bits of a symbol built by {@link #constructSymbol(int, int)}
+	 * 
+	 * @param symbol
+	 *            the packed symbol to read
+	 * @param version
+	 *            the version of the symbol
+	 * @param mask
+	 *            the mask id used when the data was added
+	 * @return the unmasked bits of every data module, in placement order
+	 */
+	public static boolean[] readDataInformation(BitMatrix symbol, int version, int mask) {
+		int[] placement = placement(version);
+		long[] plane = mask >= 0 && mask < MASKS ? maskPlane(version, mask) : new long[symbol.modules.length];
+		boolean[] data = new boolean[placement.length];
+		for (int i = 0; i < placement.length; i++) {
+			int offset = placement[i];
+			long word = symbol.modules[offset >>> 6] ^ plane[offset >>> 6];
+			data[i] = ((word >>> offset) & 1) != 0;
+		}
+		return data;
+	}
+
+	/**
+	 * Get the order in which the data modules of a version are filled. The returned array
+	 * is shared and must not be modified.
+	 * 
+	 * @param version
+	 *            the version of the QR code
+	 * @return the bit offsets of the data modules in the bitplanes of the symbol
+	 */
+	static int[] placement(int version) {
+		checkVersion(version);
+		int[] placement = PLACEMENTS.get(version-1);
+		if (placement == null) {
+			placement = computePlacement(template(version, CorrectionLvl.L, 0));
+			if (!PLACEMENTS.compareAndSet(version-1, null, placement)) {
+				placement = PLACEMENTS.get(version-1);
+			}
+		}
+		return placement;
+	}
+
+	/**
+	 * Get the bitplane of a mask for the size of a version. The returned array is shared
+	 * and must not be modified.
+	 * 
+	 * @param version
+	 *            the version of the QR code
+	 * @param mask
+	 *            the mask id, between 0 and 7
+	 * @return the modules inverted by the mask, laid out as in a {@link BitMatrix}
+	 */
+	static long[] maskPlane(int version, int mask) {
+		checkVersion(version);
+		if (mask < 0 || mask >= MASKS) {
+			throw new IllegalArgumentException("The mask has to be between 0 and 7");
+		}
+		long[][] planes = MASK_PLANES.get(version-1);
+		if (planes == null) {
+			planes = computeMaskPlanes(QRCodeInfos.getMatrixSize(version));
+			if (!MASK_PLANES.compareAndSet(version-1, null, planes)) {
+				planes = MASK_PLANES.get(version-1);
+			}
+		}
+		return planes[mask];
+	}
+
+	private static long[][] computeMaskPlanes(int size) {
+		long[][] planes = new long[MASKS][];
+		for (int mask = 0; mask < MASKS; mask++) {
+			BitMatrix plane = new BitMatrix(size);
+			for (int row = 0; row < size; row++) {
+				for (int col = 0; col < size; col++) {
+					if (isMasked(col, row, mask)) {
+						plane.setDark(col, row, true);
+					}
+				}
+			}
+			planes[mask] = plane.modules;
+		}
+		return planes;
+	}
+
+	/**
+	 * Walk the "zigzag" columns of a symbol and list the modules that are not reserved
+	 * 
+	 * @param symbol
+	 *            the packed symbol
+	 * @return the bit offsets of the free modules, in the order the data is placed
+	 */
+	private static int[] computePlacement(BitMatrix symbol) {
+		int size = symbol.getSize();
+		int rowBits = symbol.stride << 6;
+		int[] placement = new int[size*size];
+		int count = 0;
+		boolean upward = true;				// Direction of the current "zigzag" column
+
+		for (int colIndex = size-1; colIndex > 0; colIndex -= 2) {
+			if (colIndex == timingPosition) {
+				--colIndex;
+			}
+			for (int step = 0; step < size; step++) {
+				int rowIndex = upward ? size-1-step : step;
+				for (int bitCol = colIndex; bitCol > colIndex-2; bitCol--) {
+					if (!symbol.isReserved(bitCol, rowIndex)) {
+						placement[count++] = rowIndex*rowBits + bitCol;
+					}
+				}
+			}
+			upward = !upward;
+		}
+		return Arrays.copyOf(placement, count);
+	}
+
+	/**
+	 * Write the unmasked data bits on the given modules, the modules after the end of the
+	 * data receiving 0 bits
+	 */
+	private static void placeData(BitMatrix symbol, int[] placement, boolean[] data) {
+		long[] modules = symbol.modules;
+		for (int i = 0; i < placement.length; i++) {
+			int offset = placement[i];
+			long bit = 1L << offset;
+			if (i < data.length && data[i]) {
+				modules[offset >>> 6] |= bit;
+			} else {
+				modules[offset >>> 6] &= ~bit;
+			}
+		}
+	}
+
+	/**
+	 * Write the unmasked bits of a buffer on the given modules, the modules after the end
+	 * of the buffer receiving 0 bits
+	 */
+	private static void placeData(BitMatrix symbol, int[] placement, BitBuffer data) {
+		long[] modules = symbol.modules;
+		int[] codewords = data.codewords;
+		int length = Math.min(placement.length, data.getLength());
+		for (int i = 0; i < placement.length; i++) {
+			int offset = placement[i];
+			long bit = 1L << offset;
+			if (i < length && ((codewords[i >>> 3] >>> (7 - (i & 7))) & 1) != 0) {
+				modules[offset >>> 6] |= bit;
+			} else {
+				modules[offset >>> 6] &= ~bit;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a bit as already been written at a given point in a matrix
+	 *
+	 * @param matrix
+	 * 		The matrix where the verification has to be done
+	 * @param col
+	 * 		The coordinate "column" to check
+	 * @param row
+	 * 		The coordinate "row" to check
+	 * @return If a bit already exist or not as a boolean
+	 */
+	public static boolean bitExists(int[][] matrix, int col, int row){
+		if(alphaValue(matrix[col][row]) == 0xFF) {
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Gives the alpha value in ARGB for a given bit
+	 *
+	 * @param bit
+	 * 		The bit for which we are looking at the alpha value
+	 * @return The alpha value in ARGB format as an integer
+	 */
+	public static int alphaValue(int bit){
+		return ((bit >> 24)&0xFF);
+	}
+
+	/**
+	 * Checks if the end of column of a given matrix has been reached
+	 *
+	 * @param matrixSize
+	 * 		The size of the matrix we want to verify
+	 * @param runCounter
+	 * 		The number of time the algorithm filling the matrix
+	 * 		has already run.
+	 * @return a boolean value representing if we are a the end of the column
+	 */
+	public static boolean endOfColumn(int matrixSize, int runCounter){
+		if(runCounter % matrixSize == 0){
 			return true;
 		} else {
 			return false;
@@ -484,12 +1142,33 @@ public class MatrixConstruction {
 	 * @return The matrix of the QR code
 	 */
 	public static int[][] renderQRCodeMatrix(int version, boolean[] data) {
+		return renderQRCodeMatrix(version, CorrectionLvl.L, data);
+	}
+
+	/**
+	 * Create the matrix of a QR code with the given data and error correction level,
+	 * masked with the mask of lowest penalty
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param level
+	 *            The error correction level the data was encoded with
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, CorrectionLvl level, boolean[] data) {
 
-		int mask = findBestMasking(version, data);
+		MaskSelection selection = selectMask(version, level, data);
 
-		return renderQRCodeMatrix(version, data, mask);
+		return selection.getSymbol().toARGB();
 	}
 
+	/*
+	 * Smallest version for which the masks are scored concurrently by default
+	 */
+	public static final int PARALLEL_MASKING_VERSION = 10;
+
 	/**
 	 * Find the best mask to apply to a QRcode so that the penalty score is
 	 * minimized. Compute the penalty score with evaluate
@@ -498,21 +1177,694 @@ public class MatrixConstruction {
 	 * @return the mask number that minimize the penalty
 	 */
 	public static int findBestMasking(int version, boolean[] data) {
-		// TODO BONUS
-		return 0;
+		return findBestMasking(version, CorrectionLvl.L, data);
+	}
+
+	/**
+	 * Find the best mask to apply to a QRcode of a given error correction level so that
+	 * the penalty score is minimized.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param level
+	 *            The error correction level written in the format information
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @return the mask number that minimize the penalty
+	 */
+	public static int findBestMasking(int version, CorrectionLvl level, boolean[] data) {
+		return selectMask(version, level, data).getMask();
+	}
+
+	/**
+	 * Score the 8 masks of a QR code and choose the one with the lowest penalty. The masks
+	 * are scored concurrently from {@link #PARALLEL_MASKING_VERSION} on.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @return the chosen mask, the scores of all the masks and the masked symbol
+	 */
+	public static MaskSelection selectMask(int version, boolean[] data) {
+		return selectMask(version, CorrectionLvl.L, data, PARALLEL_MASKING_VERSION);
+	}
+
+	/**
+	 * Score the 8 masks of a QR code of a given error correction level and choose the one
+	 * with the lowest penalty, as {@link #selectMask(int, boolean[])}.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param level
+	 *            The error correction level written in the format information
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @return the chosen mask, the scores of all the masks and the masked symbol
+	 */
+	public static MaskSelection selectMask(int version, CorrectionLvl level, boolean[] data) {
+		return selectMask(version, level, data, PARALLEL_MASKING_VERSION);
+	}
+
+	/**
+	 * Score the 8 masks of a QR code and choose the one with the lowest penalty.
+	 * 
+	 * The data is placed once, then each candidate is the template of its mask combined
+	 * with the data XOR the mask bitplane. For the versions from parallelVersion on, the
+	 * candidates are scored by a fork/join task on the common pool, otherwise one after the
+	 * other in the calling thread.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param parallelVersion
+	 *            The smallest version for which the masks are scored concurrently
+	 * @return the chosen mask, the scores of all the masks and the masked symbol
+	 */
+	public static MaskSelection selectMask(int version, boolean[] data, int parallelVersion) {
+		return selectMask(version, CorrectionLvl.L, data, parallelVersion);
+	}
+
+	/**
+	 * Score the 8 masks of a QR code of a given error correction level and choose the one
+	 * with the lowest penalty, as {@link #selectMask(int, boolean[], int)}.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param level
+	 *            The error correction level written in the format information
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param parallelVersion
+	 *            The smallest version for which the masks are scored concurrently
+	 * @return the chosen mask, the scores of all the masks and the masked symbol
+	 */
+	public static MaskSelection selectMask(int version, CorrectionLvl level, boolean[] data, int parallelVersion) {
+		return selectMask(version, level, unmaskedData(version, data), parallelVersion);
+	}
+
+	/**
+	 * Build the symbol of a version and error correction level holding the bits of a buffer
+	 * with each mask, and keep the one with the lowest penalty score, as
+	 * {@link #selectMask(int, CorrectionLvl, boolean[])}
+	 * 
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @param data
+	 *            the codewords to add, as returned by an {@link EncodingWorkspace}
+	 * @return the best mask, the score of every mask and the masked symbol
+	 */
+	public static MaskSelection selectMask(int version, CorrectionLvl level, BitBuffer data) {
+		return selectMask(version, level, data, PARALLEL_MASKING_VERSION);
+	}
+
+	/**
+	 * Select the best mask for the bits of a buffer, as
+	 * {@link #selectMask(int, CorrectionLvl, BitBuffer)}, scoring the masks in parallel
+	 * from the given version on
+	 * 
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @param data
+	 *            the codewords to add, as returned by an {@link EncodingWorkspace}
+	 * @param parallelVersion
+	 *            the smallest version whose masks are scored in parallel
+	 * @return the best mask, the score of every mask and the masked symbol
+	 */
+	public static MaskSelection selectMask(int version, CorrectionLvl level, BitBuffer data, int parallelVersion) {
+		BitMatrix unmasked = constructSymbol(version, 0);
+		placeData(unmasked, placement(version), data);
+		return selectMask(version, level, clearReserved(unmasked), parallelVersion);
+	}
+
+	private static MaskSelection selectMask(int version, CorrectionLvl level, BitMatrix unmasked, int parallelVersion) {
+		long[] dataPlane = unmasked.modules;
+
+		int[] scores = new int[MASKS];
+		if (version >= parallelVersion) {
+			ForkJoinPool.commonPool().invoke(new MaskScoringTask(version, level, dataPlane, scores, 0, MASKS));
+		} else {
+			BitMatrix candidate = new BitMatrix(unmasked.getSize());
+			for (int mask = 0; mask < MASKS; mask++) {
+				maskCandidate(version, level, dataPlane, mask, candidate);
+				scores[mask] = evaluate(candidate);
+			}
+		}
+
+		int best = 0;
+		for (int mask = 1; mask < MASKS; mask++) {
+			if (scores[mask] < scores[best]) {
+				best = mask;
+			}
+		}
+		BitMatrix symbol = new BitMatrix(unmasked.getSize());
+		maskCandidate(version, level, dataPlane, best, symbol);
+		return new MaskSelection(best, scores, symbol);
+	}
+
+	/**
+	 * Score the masks of a QR code one after the other, each one only until its penalty
+	 * exceeds the best score found so far. The rules are scored cheapest first with
+	 * {@link #evaluate(BitMatrix, int)}, so most of the losing masks are dropped before
+	 * their finder-like patterns are searched.
+	 * 
+	 * The sooner a good mask is scored, the more masks are pruned: when orderByBalance is
+	 * true, the masks are scored by increasing dark module balance penalty (rule 4), which
+	 * only needs the dark modules to be counted. The chosen mask is the same as
+	 * {@link #selectMask(int, boolean[])} in any case.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param orderByBalance
+	 *            true to score first the masks with the best dark module balance
+	 * @return the chosen mask, the scores of the masks and the masked symbol. The score of
+	 *         a pruned mask is only a lower bound, not lower than the score of the chosen one
+	 */
+	public static MaskSelection selectMaskPruned(int version, boolean[] data, boolean orderByBalance) {
+		return selectMaskPruned(version, CorrectionLvl.L, data, orderByBalance);
+	}
+
+	/**
+	 * Score the masks of a QR code of a given error correction level one after the other,
+	 * each one only until its penalty exceeds the best score found so far, as
+	 * {@link #selectMaskPruned(int, boolean[], boolean)}.
+	 * 
+	 * @param version
+	 *            The version of the QR code
+	 * @param level
+	 *            The error correction level written in the format information
+	 * @param data
+	 *            The data to be written on the QR code
+	 * @param orderByBalance
+	 *            true to score first the masks with the best dark module balance
+	 * @return the chosen mask, the scores of the masks and the masked symbol
+	 */
+	public static MaskSelection selectMaskPruned(int version, CorrectionLvl level, boolean[] data, boolean orderByBalance) {
+		BitMatrix unmasked = unmaskedData(version, data);
+		long[] dataPlane = unmasked.modules;
+		int size = unmasked.getSize();
+
+		int[] order = new int[MASKS];
+		for (int mask = 0; mask < MASKS; mask++) {
+			order[mask] = mask;
+		}
+		if (orderByBalance) {
+			int[] keys = new int[MASKS];
+			for (int mask = 0; mask < MASKS; mask++) {
+				int darkModules = countDarkModules(version, level, dataPlane, mask);
+				// the balance penalty in the high bits, the mask id to break ties
+				keys[mask] = balancePenalty(darkModules, size*size) << 3 | mask;
+			}
+			Arrays.sort(keys);
+			for (int i = 0; i < MASKS; i++) {
+				order[i] = keys[i] & (MASKS-1);
+			}
+		}
+
+		int[] scores = new int[MASKS];
+		int best = -1;
+		int pruned = 0;
+		BitMatrix candidate = new BitMatrix(size);
+		for (int mask : order) {
+			maskCandidate(version, level, dataPlane, mask, candidate);
+			if (best < 0) {
+				scores[mask] = evaluate(candidate);
+				best = mask;
+				continue;
+			}
+			// a lower mask id wins a tie
+			int bound = mask < best ? scores[best] : scores[best] - 1;
+			scores[mask] = evaluate(candidate, bound);
+			if (scores[mask] > bound) {
+				++pruned;
+			} else {
+				best = mask;
+			}
+		}
+
+		BitMatrix symbol = new BitMatrix(size);
+		maskCandidate(version, level, dataPlane, best, symbol);
+		return new MaskSelection(best, scores, symbol, pruned);
+	}
+
+	/**
+	 * Place the data of a QR code without masking it and without the function patterns
+	 */
+	private static BitMatrix unmaskedData(int version, boolean[] data) {
+		BitMatrix unmasked = constructSymbol(version, 0);
+		placeData(unmasked, placement(version), data);
+		return clearReserved(unmasked);
+	}
+
+	/**
+	 * Clear the reserved modules of a symbol, leaving only its data modules
+	 */
+	private static BitMatrix clearReserved(BitMatrix unmasked) {
+		long[] dataPlane = unmasked.modules;
+		long[] reserved = unmasked.reserved;
+		for (int i = 0; i < dataPlane.length; i++) {
+			dataPlane[i] &= ~reserved[i];
+		}
+		return unmasked;
+	}
+
+	/**
+	 * Count the dark modules of the symbol of a version and mask holding the given unmasked
+	 * data, without building it
+	 */
+	private static int countDarkModules(int version, CorrectionLvl level, long[] dataPlane, int mask) {
+		BitMatrix template = template(version, level, mask);
+		long[] plane = maskPlane(version, mask);
+		int darkModules = 0;
+		for (int i = 0; i < dataPlane.length; i++) {
+			darkModules += Long.bitCount(template.modules[i] | ((dataPlane[i] ^ plane[i]) & ~template.reserved[i]));
+		}
+		return darkModules;
+	}
+
+	/**
+	 * Build into candidate the symbol of a version and mask holding the given unmasked data
+	 */
+	private static void maskCandidate(int version, CorrectionLvl level, long[] dataPlane, int mask, BitMatrix candidate) {
+		BitMatrix template = template(version, level, mask);
+		long[] plane = maskPlane(version, mask);
+		long[] modules = candidate.modules;
+		for (int i = 0; i < modules.length; i++) {
+			modules[i] = template.modules[i] | ((dataPlane[i] ^ plane[i]) & ~template.reserved[i]);
+		}
+		System.arraycopy(template.reserved, 0, candidate.reserved, 0, modules.length);
+	}
+
+	/**
+	 * Scores a range of masks, splitting it in halves until a single mask is left
+	 */
+	private static final class MaskScoringTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int version;
+		private final CorrectionLvl level;
+		private final long[] dataPlane;
+		private final int[] scores;
+		private final int from;
+		private final int to;
+
+		MaskScoringTask(int version, CorrectionLvl level, long[] dataPlane, int[] scores, int from, int to) {
+			this.version = version;
+			this.level = level;
+			this.dataPlane = dataPlane;
+			this.scores = scores;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				BitMatrix candidate = new BitMatrix(QRCodeInfos.getMatrixSize(version));
+				maskCandidate(version, level, dataPlane, from, candidate);
+				scores[from] = evaluate(candidate);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new MaskScoringTask(version, level, dataPlane, scores, from, middle),
+						new MaskScoringTask(version, level, dataPlane, scores, middle, to));
+			}
+		}
 	}
 
+	/*
+	 * Penalty weights of the 4 rules of ISO/IEC 18004
+	 */
+	private static final int PENALTY_RUN = 3;
+	private static final int PENALTY_BLOCK = 3;
+	private static final int PENALTY_FINDER = 40;
+	private static final int PENALTY_BALANCE = 10;
+
+	/*
+	 * 1:1:3:1:1 finder-like pattern preceded or followed by 4 light modules, read
+	 * module by module from the lowest coordinate
+	 */
+	private static final boolean[] FINDER_BEFORE_LIGHT = { true, false, true, true, true, false, true, false, false, false, false };
+	private static final boolean[] FINDER_AFTER_LIGHT = { false, false, false, false, true, false, true, true, true, false, true };
+	private static final int FINDER_LENGTH = 11;
+
 	/**
 	 * Compute the penalty score of a matrix
 	 * 
+	 * This is the straightforward module by module implementation of the 4 rules, kept as a
+	 * reference for {@link #evaluate(BitMatrix)}. Every module that is not black counts as
+	 * a light module.
+	 * 
 	 * @param matrix:
 	 *            the QR code in matrix form
 	 * @return the penalty score obtained by the QR code, lower the better
 	 */
 	public static int evaluate(int[][] matrix) {
-		//TODO BONUS
-	
-		return 0;
+		int size = matrix.length;
+		int penalty = 0;
+		int darkModules = 0;
+
+		for (int i = 0; i < size; i++) {
+			int rowRun = 1;
+			int colRun = 1;
+			for (int j = 0; j < size; j++) {
+				boolean rowDark = matrix[j][i] == B;
+				boolean colDark = matrix[i][j] == B;
+				if (rowDark) {
+					++darkModules;
+				}
+
+				//RULE 1: runs of 5 modules or more
+				if (j > 0) {
+					if (rowDark == (matrix[j-1][i] == B)) {
+						++rowRun;
+					} else {
+						penalty += runPenalty(rowRun);
+						rowRun = 1;
+					}
+					if (colDark == (matrix[i][j-1] == B)) {
+						++colRun;
+					} else {
+						penalty += runPenalty(colRun);
+						colRun = 1;
+					}
+				}
+
+				//RULE 2: blocks of 2x2 modules of the same color
+				if (i < size-1 && j < size-1) {
+					boolean color = matrix[i][j] == B;
+					if (color == (matrix[i+1][j] == B) && color == (matrix[i][j+1] == B) && color == (matrix[i+1][j+1] == B)) {
+						penalty += PENALTY_BLOCK;
+					}
+				}
+
+				//RULE 3: finder-like patterns
+				if (j + FINDER_BEFORE_LIGHT.length <= size) {
+					if (matchesRow(matrix, j, i, FINDER_BEFORE_LIGHT) || matchesRow(matrix, j, i, FINDER_AFTER_LIGHT)) {
+						penalty += PENALTY_FINDER;
+					}
+					if (matchesColumn(matrix, i, j, FINDER_BEFORE_LIGHT) || matchesColumn(matrix, i, j, FINDER_AFTER_LIGHT)) {
+						penalty += PENALTY_FINDER;
+					}
+				}
+			}
+			penalty += runPenalty(rowRun);
+			penalty += runPenalty(colRun);
+		}
+
+		//RULE 4: proportion of dark modules
+		penalty += balancePenalty(darkModules, size*size);
+		return penalty;
+	}
+
+	/**
+	 * Compute the penalty score of a packed symbol
+	 * 
+	 * The rules are evaluated on whole words of modules: runs are found by combining the
+	 * equality masks of adjacent modules, 2x2 blocks from the comparison of shifted
+	 * adjacent rows, finder-like patterns by matching the 11 module pattern at every
+	 * position of a word at once, and the dark modules are counted with
+	 * {@link Long#bitCount(long)}. Along the rows the words are shifted, along the columns
+	 * whole words of consecutive rows are combined, so that 64 columns are scored at once.
+	 * The result is the same as {@link #evaluate(int[][])}.
+	 * 
+	 * @param symbol
+	 *            the packed symbol
+	 * @return the penalty score obtained by the QR code, lower the better
+	 */
+	public static int evaluate(BitMatrix symbol) {
+		return balancePenalty(symbol)
+				+ blockPenalty(symbol.modules, symbol.size, symbol.stride)
+				+ runPenalty(symbol.modules, symbol.size, symbol.stride)
+				+ columnRunPenalty(symbol.modules, symbol.size, symbol.stride)
+				+ finderPenalty(symbol.modules, symbol.size, symbol.stride)
+				+ columnFinderPenalty(symbol.modules, symbol.size, symbol.stride);
+	}
+
+	/**
+	 * Compute the penalty score of a packed symbol, giving up as soon as it exceeds a bound
+	 * 
+	 * The rules are scored from the cheapest to the most expensive: the dark module balance,
+	 * the 2x2 blocks, the runs and finally the finder-like patterns. When the penalty of
+	 * the rules scored so far exceeds the bound, the remaining ones are skipped.
+	 * 
+	 * @param symbol
+	 *            the packed symbol
+	 * @param bound
+	 *            the highest penalty of interest
+	 * @return the penalty score of the QR code, as {@link #evaluate(BitMatrix)}, if it does
+	 *         not exceed the bound, otherwise a partial score greater than the bound
+	 */
+	public static int evaluate(BitMatrix symbol, int bound) {
+		long[] plane = symbol.modules;
+		int size = symbol.size;
+		int stride = symbol.stride;
+		int penalty = balancePenalty(symbol);
+		if (penalty > bound) {
+			return penalty;
+		}
+		penalty += blockPenalty(plane, size, stride);
+		if (penalty > bound) {
+			return penalty;
+		}
+		penalty += runPenalty(plane, size, stride);
+		if (penalty > bound) {
+			return penalty;
+		}
+		penalty += columnRunPenalty(plane, size, stride);
+		if (penalty > bound) {
+			return penalty;
+		}
+		penalty += finderPenalty(plane, size, stride);
+		if (penalty > bound) {
+			return penalty;
+		}
+		return penalty + columnFinderPenalty(plane, size, stride);
+	}
+
+	private static int runPenalty(int run) {
+		return run >= 5 ? PENALTY_RUN + run - 5 : 0;
+	}
+
+	private static int balancePenalty(int darkModules, int totalModules) {
+		return Math.abs(darkModules*20 - totalModules*10) / totalModules * PENALTY_BALANCE;
+	}
+
+	private static boolean matchesRow(int[][] matrix, int col, int row, boolean[] pattern) {
+		for (int k = 0; k < pattern.length; k++) {
+			if ((matrix[col+k][row] == B) != pattern[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matchesColumn(int[][] matrix, int col, int row, boolean[] pattern) {
+		for (int k = 0; k < pattern.length; k++) {
+			if ((matrix[col][row+k] == B) != pattern[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * RULE 4 on a packed symbol
+	 */
+	private static int balancePenalty(BitMatrix symbol) {
+		int darkModules = 0;
+		for (long word : symbol.modules) {
+			darkModules += Long.bitCount(word);
+		}
+		return balancePenalty(darkModules, symbol.size*symbol.size);
+	}
+
+	/**
+	 * RULE 1 on every line of a bitplane. A run of n >= 5 modules costs n-2, which is the
+	 * number of windows of 5 equal modules it contains plus 2 for the start of the run.
+	 */
+	private static int runPenalty(long[] plane, int size, int stride) {
+		int windows = 0;
+		int runs = 0;
+		for (int line = 0; line < size; line++) {
+			int base = line*stride;
+			long previousEqual = 0;
+			for (int start = 0; start < size; start += 64) {
+				long bits = window(plane, base, stride, start);
+				/*
+				 * bit i of equal: module i has the same color as module i+1
+				 */
+				long equal = ~(bits ^ window(plane, base, stride, start+1)) & validPositions(size-1-start);
+				long nextEqual = start+64 < size ? ~(window(plane, base, stride, start+64) ^ window(plane, base, stride, start+65)) : 0;
+				long five = equal & (equal >>> 1 | nextEqual << 63) & (equal >>> 2 | nextEqual << 62) & (equal >>> 3 | nextEqual << 61);
+				five &= validPositions(size-4-start);
+				long startsRun = five & ~(equal << 1 | previousEqual >>> 63);
+				windows += Long.bitCount(five);
+				runs += Long.bitCount(startsRun);
+				previousEqual = equal;
+			}
+		}
+		return windows + runs*(PENALTY_RUN-1);
+	}
+
+	/**
+	 * RULE 2 on the rows of a bitplane: a block starts where a row and the next one are
+	 * equal and each of them is equal to itself shifted by one module
+	 */
+	private static int blockPenalty(long[] plane, int size, int stride) {
+		int blocks = 0;
+		for (int row = 0; row < size-1; row++) {
+			int top = row*stride;
+			int bottom = top+stride;
+			for (int start = 0; start < size-1; start += 64) {
+				long a = window(plane, top, stride, start);
+				long b = window(plane, bottom, stride, start);
+				long aNext = window(plane, top, stride, start+1);
+				long bNext = window(plane, bottom, stride, start+1);
+				long same = ~(a ^ b) & ~(a ^ aNext) & ~(b ^ bNext);
+				blocks += Long.bitCount(same & validPositions(size-1-start));
+			}
+		}
+		return blocks*PENALTY_BLOCK;
+	}
+
+	/**
+	 * RULE 1 on the columns of a bitplane, 64 columns at a time
+	 */
+	private static int columnRunPenalty(long[] plane, int size, int stride) {
+		int windows = 0;
+		int runs = 0;
+		if (size < 5) {
+			return 0;
+		}
+		for (int word = 0; word < stride; word++) {
+			long valid = validPositions(size - (word << 6));
+			/*
+			 * equal[r]: the modules of row r have the same color as the ones of row r+1
+			 */
+			long equal1 = verticalEqual(plane, stride, word, 0, valid);
+			long equal2 = verticalEqual(plane, stride, word, 1, valid);
+			long equal3 = verticalEqual(plane, stride, word, 2, valid);
+			long previousEqual = 0;
+			for (int row = 0; row+4 < size; row++) {
+				long equal4 = verticalEqual(plane, stride, word, row+3, valid);
+				long five = equal1 & equal2 & equal3 & equal4;
+				windows += Long.bitCount(five);
+				runs += Long.bitCount(five & ~previousEqual);
+				previousEqual = equal1;
+				equal1 = equal2;
+				equal2 = equal3;
+				equal3 = equal4;
+			}
+		}
+		return windows + runs*(PENALTY_RUN-1);
+	}
+
+	private static long verticalEqual(long[] plane, int stride, int word, int row, long valid) {
+		return ~(plane[row*stride + word] ^ plane[(row+1)*stride + word]) & valid;
+	}
+
+	/**
+	 * RULE 3 on the rows of a bitplane: the 11 windows shifted by 0 to 10 modules are
+	 * compared to the pattern (1011101 followed or preceded by 0000), so that each bit of
+	 * the result tells whether the pattern starts at that position
+	 */
+	private static int finderPenalty(long[] plane, int size, int stride) {
+		int matches = 0;
+		for (int row = 0; row < size; row++) {
+			int base = row*stride;
+			for (int start = 0; start <= size-FINDER_LENGTH; start += 64) {
+				long before = validPositions(size-FINDER_LENGTH+1-start);
+				long after = before;
+				long low = window(plane, base, stride, start);
+				long high = window(plane, base, stride, start+64);
+				long s1 = shift(low, high, 1);
+				long s2 = shift(low, high, 2);
+				long s3 = shift(low, high, 3);
+				long s4 = shift(low, high, 4);
+				long s5 = shift(low, high, 5);
+				long s6 = shift(low, high, 6);
+				long s7 = shift(low, high, 7);
+				long s8 = shift(low, high, 8);
+				long s9 = shift(low, high, 9);
+				long s10 = shift(low, high, 10);
+				before &= low & ~s1 & s2 & s3 & s4 & ~s5 & s6 & ~s7 & ~s8 & ~s9 & ~s10;
+				after &= ~low & ~s1 & ~s2 & ~s3 & s4 & ~s5 & s6 & s7 & s8 & ~s9 & s10;
+				matches += Long.bitCount(before) + Long.bitCount(after);
+			}
+		}
+		return matches*PENALTY_FINDER;
+	}
+
+	/**
+	 * RULE 3 on the columns of a bitplane: the words of 11 consecutive rows are compared to
+	 * the pattern, 64 columns at a time
+	 */
+	private static int columnFinderPenalty(long[] plane, int size, int stride) {
+		int matches = 0;
+		for (int word = 0; word < stride; word++) {
+			long valid = validPositions(size - (word << 6));
+			for (int row = 0; row+FINDER_LENGTH <= size; row++) {
+				int index = row*stride + word;
+				long m0 = plane[index];
+				long m1 = plane[index += stride];
+				long m2 = plane[index += stride];
+				long m3 = plane[index += stride];
+				long m4 = plane[index += stride];
+				long m5 = plane[index += stride];
+				long m6 = plane[index += stride];
+				long m7 = plane[index += stride];
+				long m8 = plane[index += stride];
+				long m9 = plane[index += stride];
+				long m10 = plane[index + stride];
+				long before = valid & m0 & ~m1 & m2 & m3 & m4 & ~m5 & m6 & ~m7 & ~m8 & ~m9 & ~m10;
+				long after = valid & ~m0 & ~m1 & ~m2 & ~m3 & m4 & ~m5 & m6 & m7 & m8 & ~m9 & m10;
+				matches += Long.bitCount(before) + Long.bitCount(after);
+			}
+		}
+		return matches*PENALTY_FINDER;
+	}
+
+	/**
+	 * Get the 64 modules of a line starting at a given position, the modules after the end
+	 * of the line being 0
+	 */
+	private static long window(long[] plane, int base, int stride, int start) {
+		int word = start >>> 6;
+		int shift = start & 63;
+		if (word >= stride) {
+			return 0;
+		}
+		long bits = plane[base+word] >>> shift;
+		if (shift != 0 && word+1 < stride) {
+			bits |= plane[base+word+1] << (64-shift);
+		}
+		return bits;
+	}
+
+	/**
+	 * Get the 64 modules of a line starting k modules after the ones in low, high holding
+	 * the 64 modules that follow low
+	 */
+	private static long shift(long low, long high, int k) {
+		return (low >>> k) | (high << (64-k));
+	}
+
+	/**
+	 * @return a word where the given number of lowest bits are set, none of them if it is
+	 *         negative and all of them if it is 64 or more
+	 */
+	private static long validPositions(int count) {
+		if (count <= 0) {
+			return 0;
+		}
+		return count >= 64 ? -1L : (1L << count) - 1;
 	}
 
 }
\ No newline at end of file
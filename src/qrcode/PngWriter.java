@@ -0,0 +1,254 @@
+package qrcode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writer of QR codes as 1 bit grayscale PNG images.
+ *
+ * The image is written while it is generated: each scanline is built from a row of modules,
+ * scaled and surrounded by the quiet zone, and given to the compressor, whose output is
+ * written out in IDAT chunks as soon as a chunk is full. Only one scanline and one chunk
+ * are held in memory, whatever the size of the image. The compressor, the checksum and the
+ * buffers are reused from one image to the next, so a writer is not thread safe: each
+ * thread needs its own. Closing it releases the memory of the compressor.
+ */
+public final class PngWriter implements AutoCloseable {
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int CHUNK_SIZE = 8192;
+
+	/*
+	 * Size of the IHDR chunk data: width, height, bit depth, color type, compression,
+	 * filter and interlace methods
+	 */
+	private static final int HEADER_SIZE = 13;
+
+	private final int scale;
+	private final int quietZone;
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+	private final CRC32 crc = new CRC32();
+	private final byte[] chunk = new byte[CHUNK_SIZE];
+	private final byte[] header = new byte[8];
+	private byte[] scanline = new byte[0];
+
+	/**
+	 * Create a writer
+	 *
+	 * @param scale
+	 *            the number of pixels on a side of a module
+	 * @param quietZone
+	 *            the number of white modules around the QR codes, 4 in the standard
+	 */
+	public PngWriter(int scale, int quietZone) {
+		if (scale < 1) {
+			throw new IllegalArgumentException("The scale has to be at least 1");
+		}
+		if (quietZone < 0) {
+			throw new IllegalArgumentException("The quiet zone cannot be negative");
+		}
+		this.scale = scale;
+		this.quietZone = quietZone;
+	}
+
+	/**
+	 * Create a writer with the scale and quiet zone of an encoder
+	 *
+	 * @param encoder
+	 *            the encoder whose rendering settings are used
+	 */
+	public PngWriter(QrEncoder encoder) {
+		this(encoder.getScale(), encoder.getQuietZone());
+	}
+
+	/**
+	 * Write a QR code as a PNG image. The stream is not closed.
+	 *
+	 * @param code
+	 *            the QR code
+	 * @param out
+	 *            the stream receiving the image
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void write(QrCode code, OutputStream out) throws IOException {
+		write(code.symbol, out);
+	}
+
+	/**
+	 * Write the modules of a symbol as a PNG image. The stream is not closed.
+	 *
+	 * @param symbol
+	 *            the modules of the QR code
+	 * @param out
+	 *            the stream receiving the image
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void write(BitMatrix symbol, OutputStream out) throws IOException {
+		write(symbol, (Sink) out::write);
+	}
+
+	/**
+	 * Write a QR code as a PNG image. The channel is not closed.
+	 *
+	 * @param code
+	 *            the QR code
+	 * @param channel
+	 *            the channel receiving the image
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void write(QrCode code, WritableByteChannel channel) throws IOException {
+		write(code.symbol, channel);
+	}
+
+	/**
+	 * Write the modules of a symbol as a PNG image. The channel is not closed.
+	 *
+	 * @param symbol
+	 *            the modules of the QR code
+	 * @param channel
+	 *            the channel receiving the image
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void write(BitMatrix symbol, WritableByteChannel channel) throws IOException {
+		write(symbol, (bytes, offset, length) -> {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		});
+	}
+
+	/**
+	 * @param symbol
+	 *            the modules of a QR code
+	 * @return the number of pixels on a side of its image
+	 */
+	public int getImageSize(BitMatrix symbol) {
+		return (symbol.getSize() + 2 * quietZone) * scale;
+	}
+
+	/**
+	 * Release the memory of the compressor. The writer cannot be used afterwards.
+	 */
+	@Override
+	public void close() {
+		deflater.end();
+	}
+
+	private void write(BitMatrix symbol, Sink sink) throws IOException {
+		int size = symbol.getSize();
+		int pixels = getImageSize(symbol);
+		// filter type byte, then 8 pixels per byte, 1 for white
+		int lineLength = 1 + (pixels + 7) / 8;
+		if (scanline.length < lineLength) {
+			scanline = new byte[lineLength];
+		}
+
+		sink.write(SIGNATURE, 0, SIGNATURE.length);
+		putInt(chunk, 0, pixels);
+		putInt(chunk, 4, pixels);
+		chunk[8] = 1;	// bit depth
+		chunk[9] = 0;	// grayscale
+		chunk[10] = 0;
+		chunk[11] = 0;
+		chunk[12] = 0;
+		writeChunk(sink, IHDR, HEADER_SIZE);
+
+		deflater.reset();
+		int buffered = 0;
+		for (int row = -quietZone; row < size + quietZone; row++) {
+			fillScanline(symbol, row, lineLength);
+			for (int repeat = 0; repeat < scale; repeat++) {
+				deflater.setInput(scanline, 0, lineLength);
+				while (!deflater.needsInput()) {
+					buffered = deflate(sink, buffered);
+				}
+			}
+		}
+		deflater.finish();
+		while (!deflater.finished()) {
+			buffered = deflate(sink, buffered);
+		}
+		if (buffered > 0) {
+			writeChunk(sink, IDAT, buffered);
+		}
+		writeChunk(sink, IEND, 0);
+	}
+
+	/**
+	 * Compress into the chunk buffer, writing it out as an IDAT chunk when it is full
+	 *
+	 * @return the number of bytes left in the chunk buffer
+	 */
+	private int deflate(Sink sink, int buffered) throws IOException {
+		buffered += deflater.deflate(chunk, buffered, CHUNK_SIZE - buffered);
+		if (buffered == CHUNK_SIZE) {
+			writeChunk(sink, IDAT, buffered);
+			buffered = 0;
+		}
+		return buffered;
+	}
+
+	/**
+	 * Build the scanline of a row of modules, which may be in the quiet zone
+	 */
+	private void fillScanline(BitMatrix symbol, int row, int lineLength) {
+		scanline[0] = 0;	// no filter
+		Arrays.fill(scanline, 1, lineLength, (byte) 0xFF);
+		if (row < 0 || row >= symbol.getSize()) {
+			return;
+		}
+		for (int col = 0; col < symbol.getSize(); col++) {
+			if (symbol.isDark(col, row)) {
+				int start = (col + quietZone) * scale;
+				for (int x = start; x < start + scale; x++) {
+					scanline[1 + (x >>> 3)] &= ~(0x80 >>> (x & 7));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write a chunk whose data is at the start of the chunk buffer
+	 */
+	private void writeChunk(Sink sink, byte[] type, int length) throws IOException {
+		putInt(header, 0, length);
+		System.arraycopy(type, 0, header, 4, 4);
+		crc.reset();
+		crc.update(type, 0, 4);
+		crc.update(chunk, 0, length);
+		sink.write(header, 0, 8);
+		sink.write(chunk, 0, length);
+		putInt(header, 0, (int) crc.getValue());
+		sink.write(header, 0, 4);
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	/*
+	 * Destination of the bytes of an image
+	 */
+	@FunctionalInterface
+	private interface Sink {
+		void write(byte[] bytes, int offset, int length) throws IOException;
+	}
+}
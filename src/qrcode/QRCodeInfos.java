@@ -5,15 +5,112 @@ public final class QRCodeInfos {
 	private static final int MATRIX_SIZE_VERSION_1 =21;
 	private static final int MATRIX_SIZE_STEP =4;
 	
-	private final static int[] VERSION_CODE_WORDS = { 19, 34, 55, 80 };
-	
 	private static final int[] LVL_CODE = {1,0,3,2};
 	
 	public enum CorrectionLvl{
 		L,M,Q,H
 	}
 	
-	private static final int[] ERROR_CORRECTION_CODEWORDS = {7,10,15,20};
+	/**
+	 * The modes the data can be encoded with, each with its 4 bits indicator and the width
+	 * of its character count for the versions 1-9, 10-26 and 27-40
+	 */
+	public enum Mode{
+		NUMERIC(0b0001, 10, 12, 14),
+		ALPHANUMERIC(0b0010, 9, 11, 13),
+		BYTE(0b0100, 8, 16, 16),
+		KANJI(0b1000, 8, 10, 12);
+		
+		private final int indicator;
+		private final byte[] countBits;
+		
+		Mode(int indicator, int small, int medium, int large) {
+			this.indicator = indicator;
+			this.countBits = new byte[] {(byte) small, (byte) medium, (byte) large};
+		}
+		
+		/**
+		 * @return the 4 bits written before the segments of this mode
+		 */
+		public int getIndicator() {
+			return indicator;
+		}
+		
+		/**
+		 * @param version
+		 *        version of the QRcode
+		 * @return the number of bits of the character count of this mode in the given version
+		 */
+		public int getCountBits(int version) {
+			return countBits[countRange(version)];
+		}
+	}
+	
+	/**
+	 * Highest version of a QR code
+	 */
+	public static final int MAX_VERSION = 40;
+	
+	/*
+	 * First version of each width of the character count: 1-9, 10-26 and 27-40
+	 */
+	private static final int[] COUNT_RANGE_START = {1, 10, 27, MAX_VERSION+1};
+	
+	/*
+	 * Number of error correction codewords of each block, indexed by level and version (ISO/IEC 18004 table 9)
+	 */
+	private static final byte[][] BLOCK_ECC_CODEWORDS = {
+		{0, 7, 10, 15, 20, 26, 18, 20, 24, 30, 18, 20, 24, 26, 30, 22, 24, 28, 30, 28, 28, 28, 28, 30, 30, 26, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},
+		{0, 10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26, 26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28},
+		{0, 13, 22, 18, 26, 18, 24, 18, 22, 20, 24, 28, 26, 24, 20, 30, 24, 28, 28, 26, 30, 28, 30, 30, 30, 30, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},
+		{0, 17, 28, 22, 16, 22, 28, 26, 26, 24, 28, 24, 28, 22, 24, 24, 30, 28, 28, 26, 28, 30, 24, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30}
+	};
+	
+	/*
+	 * Number of error correction blocks, indexed by level and version (ISO/IEC 18004 table 9)
+	 */
+	private static final byte[][] BLOCKS = {
+		{0, 1, 1, 1, 1, 1, 2, 2, 2, 2, 4, 4, 4, 4, 4, 6, 6, 6, 6, 7, 8, 8, 9, 9, 10, 12, 12, 12, 13, 14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 24, 25},
+		{0, 1, 1, 1, 2, 2, 4, 4, 4, 5, 5, 5, 8, 9, 9, 10, 10, 11, 13, 14, 16, 17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49},
+		{0, 1, 1, 2, 2, 4, 4, 6, 6, 8, 8, 8, 10, 12, 16, 12, 17, 16, 18, 21, 20, 23, 23, 25, 27, 29, 34, 34, 35, 38, 40, 43, 45, 48, 51, 53, 56, 59, 62, 65, 68},
+		{0, 1, 1, 2, 4, 4, 4, 5, 6, 8, 8, 11, 11, 16, 16, 18, 16, 19, 21, 25, 25, 25, 34, 30, 32, 35, 37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81}
+	};
+	
+	/*
+	 * Coordinates of the centers of the alignment patterns of each version, on both axes
+	 */
+	private static final int[][] ALIGNMENT_POSITIONS = alignmentPositions();
+	
+	/*
+	 * Number of codewords of each version, data and error correction included
+	 */
+	private static final short[] TOTAL_CODE_WORDS = totalCodeWords();
+	
+	/*
+	 * Number of data codewords and maximum number of input bytes in byte mode, indexed by level and version
+	 */
+	private static final short[][] DATA_CODE_WORDS = dataCodeWords();
+	private static final short[][] MAX_INPUT_LENGTH = maxInputLengths();
+	
+	/*
+	 * Number of data bits of each level and version, increasing with the version
+	 */
+	private static final int[][] CAPACITY_BITS = capacityBits();
+	
+	private static final int FORMAT_GENERATOR = 0b10100110111;
+	private static final int FORMAT_XOR_MASK = 0b101010000010010;
+	private static final int VERSION_GENERATOR = 0b1111100100101;
+	
+	/*
+	 * The 15 bits of the format information of each error correction level and mask,
+	 * at index level.ordinal()*8 + mask
+	 */
+	private static final int[] FORMAT_WORDS = formatWords();
+	
+	/*
+	 * The 18 bits of the version information of each version, only defined from version 7
+	 */
+	private static final int[] VERSION_WORDS = versionWords();
 	
 	
 	
@@ -25,7 +122,7 @@ public final class QRCodeInfos {
 	 * @return an integer : the size of the matrix for a given QR code version
 	 */
 	public static int getMatrixSize(int version) {
-		if(version>40) {
+		if(version>MAX_VERSION) {
 			throw new IllegalArgumentException("The maximum QR code Version is 40");
 		}
 		return MATRIX_SIZE_VERSION_1 + MATRIX_SIZE_STEP*(version-1);
@@ -39,22 +136,119 @@ public final class QRCodeInfos {
 	 * @return the maximum number of bytes of data that can be encoded for the given version
 	 */
 	public static int getMaxInputLength(int version) {
-		if(version>4) {
-			throw new UnsupportedOperationException("The version has to be between 1 and 5");
+		return getMaxInputLength(version, CorrectionLvl.L);
+	}
+	
+	/**
+	 * Get the maximum input length for a given QR code version and error correction level
+	 * @param version
+	 *        version of the QRcode
+	 * @param level
+	 *        the error correction level
+	 * @return the maximum number of bytes of data that can be encoded for the given version and level
+	 */
+	public static int getMaxInputLength(int version, CorrectionLvl level) {
+		checkVersion(version);
+		return MAX_INPUT_LENGTH[level.ordinal()][version] ;
+	}
+	
+	/**
+	 * Get the number of data bits a given version and error correction level can hold
+	 * @param version
+	 *        version of the QRcode
+	 * @param level
+	 *        the error correction level
+	 * @return the number of bits of the data codewords
+	 */
+	public static int getCapacityBits(int version, CorrectionLvl level) {
+		checkVersion(version);
+		return CAPACITY_BITS[level.ordinal()][version];
+	}
+	
+	/**
+	 * Get the smallest version that can hold a given number of bytes in byte mode
+	 * @param byteLength
+	 *        the number of bytes to encode
+	 * @param level
+	 *        the error correction level
+	 * @return the smallest version that can hold the bytes, or -1 if even version 40 is too small
+	 */
+	public static int getMinimumVersion(int byteLength, CorrectionLvl level) {
+		int small = byteLength < (1<<8) ? 4+8+8*byteLength : Integer.MAX_VALUE;
+		int large = byteLength < (1<<16) ? 4+16+8*byteLength : Integer.MAX_VALUE;
+		return minimumVersion(new int[] {small, large, large}, level);
+	}
+	
+	/**
+	 * Find the smallest version whose capacity reaches the number of bits needed. The
+	 * number of bits depends on the width of the character counts, so it is given for each
+	 * range of versions sharing the same widths, and a binary search is done in each range
+	 * @param bits
+	 *        the number of bits needed by the versions 1-9, 10-26 and 27-40
+	 * @param level
+	 *        the error correction level
+	 * @return the smallest version that can hold the bits, or -1 if none can
+	 */
+	static int minimumVersion(int[] bits, CorrectionLvl level) {
+		int[] capacity = CAPACITY_BITS[level.ordinal()];
+		for(int range=0;range<bits.length;range++) {
+			int low = COUNT_RANGE_START[range];
+			int high = COUNT_RANGE_START[range+1]-1;
+			if(capacity[high] < bits[range]) {
+				continue;
+			}
+			while(low < high) {
+				int middle = (low+high) >>> 1;
+				if(capacity[middle] < bits[range]) {
+					low = middle+1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
 		}
-		return VERSION_CODE_WORDS[version-1] -2 ;
+		return -1;
+	}
+	
+	/**
+	 * Get the number of bits of the character count in byte mode for a given version
+	 * @param version
+	 *        version of the QRcode
+	 * @return 8 up to version 9, 16 from version 10 on
+	 */
+	public static int getCountBits(int version) {
+		return Mode.BYTE.getCountBits(version);
+	}
+	
+	/**
+	 * Get the range of versions sharing the same widths of character counts
+	 * @param version
+	 *        version of the QRcode
+	 * @return 0 for the versions 1-9, 1 for 10-26 and 2 for 27-40
+	 */
+	static int countRange(int version) {
+		checkVersion(version);
+		return version<COUNT_RANGE_START[1] ? 0 : version<COUNT_RANGE_START[2] ? 1 : 2;
 	}
 	
 	/** Get the number of error correction codewords needed for a given version
 	 * @param version
 	 * 			 version of the QRcode	
-	 * @return
+	 * @return the number of error correction codewords of all the blocks together
 	 */
 	public static int getECCLength(int version) {
-		if(version>4) {
-			throw new UnsupportedOperationException("The version has to be between 1 and 5");
-		}
-		return ERROR_CORRECTION_CODEWORDS[version-1] ;
+		return getECCLength(version, CorrectionLvl.L);
+	}
+	
+	/** Get the number of error correction codewords needed for a given version and error correction level
+	 * @param version
+	 * 			 version of the QRcode	
+	 * @param level
+	 *           the error correction level
+	 * @return the number of error correction codewords of all the blocks together
+	 */
+	public static int getECCLength(int version, CorrectionLvl level) {
+		return getTotalCodeWordsLength(version) - DATA_CODE_WORDS[level.ordinal()][version] ;
 	}
 	
 	/**
@@ -64,10 +258,103 @@ public final class QRCodeInfos {
 	 * @return the number of codewords in the version
 	 */
 	public static int getCodeWordsLength(int version) {
-		if(version>4) {
-			throw new UnsupportedOperationException("The version has to be between 1 and 5");
+		return getCodeWordsLength(version, CorrectionLvl.L);
+	}
+	
+	/**
+	 * Get the number of codewords encoding the data for a given version and error correction level
+	 * @param version
+	 *          version of the QRcode
+	 * @param level
+	 *          the error correction level
+	 * @return the number of codewords in the version
+	 */
+	public static int getCodeWordsLength(int version, CorrectionLvl level) {
+		checkVersion(version);
+		return DATA_CODE_WORDS[level.ordinal()][version] ;
+	}
+	
+	/**
+	 * Get the number of codewords of a given version, data and error correction included
+	 * @param version
+	 *          version of the QRcode
+	 * @return the number of codewords the symbol holds
+	 */
+	public static int getTotalCodeWordsLength(int version) {
+		checkVersion(version);
+		return TOTAL_CODE_WORDS[version] ;
+	}
+	
+	/**
+	 * Get the number of blocks the codewords of a given version are split in. Each block
+	 * has its own error correction codewords
+	 * @param version
+	 *          version of the QRcode
+	 * @return the number of blocks
+	 */
+	public static int getBlockCount(int version) {
+		return getBlockCount(version, CorrectionLvl.L);
+	}
+	
+	/**
+	 * Get the number of blocks the codewords of a given version and error correction level
+	 * are split in. Each block has its own error correction codewords
+	 * @param version
+	 *          version of the QRcode
+	 * @param level
+	 *          the error correction level
+	 * @return the number of blocks
+	 */
+	public static int getBlockCount(int version, CorrectionLvl level) {
+		checkVersion(version);
+		return BLOCKS[level.ordinal()][version] ;
+	}
+	
+	/**
+	 * Get the number of error correction codewords of each block of a given version
+	 * @param version
+	 *          version of the QRcode
+	 * @return the number of error correction codewords of a block
+	 */
+	public static int getBlockECCLength(int version) {
+		return getBlockECCLength(version, CorrectionLvl.L);
+	}
+	
+	/**
+	 * Get the number of error correction codewords of each block of a given version and
+	 * error correction level
+	 * @param version
+	 *          version of the QRcode
+	 * @param level
+	 *          the error correction level
+	 * @return the number of error correction codewords of a block
+	 */
+	public static int getBlockECCLength(int version, CorrectionLvl level) {
+		checkVersion(version);
+		return BLOCK_ECC_CODEWORDS[level.ordinal()][version] ;
+	}
+	
+	/**
+	 * Get the coordinates of the centers of the alignment patterns of a given version.
+	 * The patterns are centered on every pair of these coordinates, except the three
+	 * pairs overlapping the finder patterns
+	 * @param version
+	 *          version of the QRcode
+	 * @return the coordinates in increasing order, empty for version 1
+	 */
+	public static int[] getAlignmentPositions(int version) {
+		return alignmentPositions(version).clone();
+	}
+	
+	static int[] alignmentPositions(int version) {
+		checkVersion(version);
+		return ALIGNMENT_POSITIONS[version];
+	}
+	
+	private static void checkVersion(int version) {
+		if(version<1 || version>MAX_VERSION) {
+			throw new IllegalArgumentException("The version has to be between 1 and 40");
 		}
-		return VERSION_CODE_WORDS[version-1] ;
 	}
 
 
@@ -80,46 +367,167 @@ public final class QRCodeInfos {
 	 * @return the array of pixels encoding the format information. Most significant bit first
 	 */
 	public static boolean[] getFormatSequence(int mask) {
+		return getFormatSequence(CorrectionLvl.L, mask);
+	}
+	
+	/**
+	 * Return the sequence of pixels that encodes the format information related to error correction level and used mask.
+	 * The array is a boolean array providing a binary representation of the data, with the most significant bit first
+	 * @param level
+	 *        the error correction level
+	 * @param mask
+	 *        the integer code of the mask to be used (must be between 0 and 7)
+	 * @return the array of pixels encoding the format information. Most significant bit first
+	 */
+	public static boolean[] getFormatSequence(CorrectionLvl level, int mask) {
+		int format = getFormatWord(level, mask);
+		
+		boolean[] formatPixels = new boolean[15];
+		for(int i=0;i<formatPixels.length;i++) {
+			formatPixels[i] = !(((format >> (14 - i)) & 0b1) == 0);
+		}
+		
+		return formatPixels;
+	}
+	
+	/**
+	 * Get the format information related to error correction level and used mask, packed in an integer.
+	 * Bit 14 is the first module of the sequence returned by {@link #getFormatSequence(int)}, bit 0 the last one
+	 * @param level
+	 *        the error correction level
+	 * @param mask
+	 *        the integer code of the mask to be used (must be between 0 and 7)
+	 * @return the 15 bits of the format information, BCH code and XOR mask included
+	 */
+	public static int getFormatWord(CorrectionLvl level, int mask) {
 		if(mask>7 || mask <0) {
 			throw new IllegalArgumentException("The mask has to be between 0 and 7");
 		}
-		int errorCorrectionLevel=CorrectionLvl.L.ordinal();
-		int code = ((LVL_CODE[errorCorrectionLevel]& 0x3)<<3) | (mask&0x7);
-		int current = code<<10;
+		return FORMAT_WORDS[level.ordinal()*8 + mask];
+	}
+	
+	/**
+	 * Get the version information of a QR code, packed in an integer. Only the versions from 7 on have one
+	 * @param version
+	 *        version of the QRcode, between 7 and 40
+	 * @return the 18 bits of the version information: the version in the 6 most significant bits followed by the BCH code
+	 */
+	public static int getVersionWord(int version) {
+		if(version<7 || version>40) {
+			throw new IllegalArgumentException("Only the versions between 7 and 40 have a version information");
+		}
+		return VERSION_WORDS[version];
+	}
 	
-		int poly = 0b10100110111;
-		int size = 15;
-		while(((0b1<<(size-1)) & current) ==0) {
-			size--;
-			if(size == 0) {
-				throw new IllegalAccessError();
+	private static int[] formatWords() {
+		CorrectionLvl[] levels = CorrectionLvl.values();
+		int[] words = new int[levels.length*8];
+		for(CorrectionLvl level : levels) {
+			for(int mask=0;mask<8;mask++) {
+				int code = ((LVL_CODE[level.ordinal()]& 0x3)<<3) | mask;
+				words[level.ordinal()*8 + mask] = ((code<<10) | bchRemainder(code, FORMAT_GENERATOR, 10)) ^ FORMAT_XOR_MASK;
 			}
 		}
-		
-		while(size>10) {
-			int paddedPoly = poly<<(size-11);
-	
-			current = paddedPoly^current;
-			
-			
-			while(((0b1<<(size-1)) & current) == 0) {
-				size--;
-				if(size == 0) {
-					throw new IllegalAccessError();
-				}
+		return words;
+	}
+	
+	/*
+	 * The modules left for the codewords are the whole symbol minus the finder patterns with
+	 * their separators, the format information with the dark module, the timing patterns,
+	 * the alignment patterns and, from version 7, the version information. The remaining
+	 * bits that do not make a whole codeword are left empty.
+	 */
+	private static short[] totalCodeWords() {
+		short[] words = new short[MAX_VERSION+1];
+		for(int version=1;version<=MAX_VERSION;version++) {
+			int size = getMatrixSize(version);
+			int modules = size*size - 3*64 - 31 - 2*(size-16);
+			int count = ALIGNMENT_POSITIONS[version].length;
+			if(count > 0) {
+				// the patterns on the timing patterns share 5 modules with them
+				modules -= (count*count - 3)*25 - 2*(count-2)*5;
+			}
+			if(version>=7) {
+				modules -= 36;
 			}
+			words[version] = (short) (modules/8);
 		}
-		
-		int format = (code<<10 | (current& 0x3FF)) ^ 0b101010000010010;
-		
-		boolean[] formatPixels = new boolean[15];
-		for(int i=0;i<formatPixels.length;i++) {
-			formatPixels[i] = !(((format >> (14 - i)) & 0b1) == 0);
+		return words;
+	}
+	
+	private static short[][] dataCodeWords() {
+		short[][] words = new short[BLOCKS.length][MAX_VERSION+1];
+		for(int level=0;level<BLOCKS.length;level++) {
+			for(int version=1;version<=MAX_VERSION;version++) {
+				words[level][version] = (short) (TOTAL_CODE_WORDS[version] - BLOCKS[level][version]*BLOCK_ECC_CODEWORDS[level][version]);
+			}
 		}
-		
-		return formatPixels;
+		return words;
+	}
+	
+	/*
+	 * The byte mode header takes 4 bits of mode, the character count and 4 bits of
+	 * terminator, rounded up to whole codewords
+	 */
+	private static short[][] maxInputLengths() {
+		short[][] lengths = new short[BLOCKS.length][MAX_VERSION+1];
+		for(int level=0;level<BLOCKS.length;level++) {
+			for(int version=1;version<=MAX_VERSION;version++) {
+				lengths[level][version] = (short) (DATA_CODE_WORDS[level][version] - (getCountBits(version)+4+4+7)/8);
+			}
+		}
+		return lengths;
 	}
 	
+	private static int[][] capacityBits() {
+		int[][] bits = new int[BLOCKS.length][MAX_VERSION+1];
+		for(int level=0;level<BLOCKS.length;level++) {
+			for(int version=1;version<=MAX_VERSION;version++) {
+				bits[level][version] = DATA_CODE_WORDS[level][version]*8;
+			}
+		}
+		return bits;
+	}
 	
+	/*
+	 * The patterns are spread evenly between the timing patterns at 6 and the last
+	 * position at size-7, the step being even and the first gap taking the remainder
+	 */
+	private static int[][] alignmentPositions() {
+		int[][] positions = new int[MAX_VERSION+1][];
+		positions[1] = new int[0];
+		for(int version=2;version<=MAX_VERSION;version++) {
+			int count = version/7+2;
+			int step = version==32 ? 26 : (version*4 + count*2 + 1) / (count*2 - 2) * 2;
+			int[] coordinates = new int[count];
+			coordinates[0] = 6;
+			for(int i=count-1, position=getMatrixSize(version)-7;i>=1;i--, position-=step) {
+				coordinates[i] = position;
+			}
+			positions[version] = coordinates;
+		}
+		return positions;
+	}
+	
+	private static int[] versionWords() {
+		int[] words = new int[41];
+		for(int version=7;version<=40;version++) {
+			words[version] = (version<<12) | bchRemainder(version, VERSION_GENERATOR, 12);
+		}
+		return words;
+	}
+	
+	/**
+	 * Compute the remainder of the division of code * x^degree by the generator polynomial over GF(2)
+	 */
+	private static int bchRemainder(int code, int generator, int degree) {
+		int current = code<<degree;
+		for(int bit=Integer.SIZE-1-Integer.numberOfLeadingZeros(current);bit>=degree;bit--) {
+			if(((current>>bit) & 0b1) != 0) {
+				current ^= generator<<(bit-degree);
+			}
+		}
+		return current;
+	}
 
 }
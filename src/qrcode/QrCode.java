@@ -0,0 +1,70 @@
+package qrcode;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+/**
+ * A QR code built by a {@link QrEncoder}: its modules, version, error correction level
+ * and mask. It cannot be modified, so it can be shared between threads.
+ */
+public final class QrCode {
+
+	private final int version;
+	private final CorrectionLvl level;
+	private final int mask;
+	final BitMatrix symbol;
+
+	QrCode(int version, CorrectionLvl level, int mask, BitMatrix symbol) {
+		this.version = version;
+		this.level = level;
+		this.mask = mask;
+		this.symbol = symbol;
+	}
+
+	/**
+	 * @return the version of the QR code
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the error correction level of the QR code
+	 */
+	public CorrectionLvl getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the mask applied to the data, between 0 and 7
+	 */
+	public int getMask() {
+		return mask;
+	}
+
+	/**
+	 * @return the number of modules on a side of the QR code, quiet zone excluded
+	 */
+	public int getSize() {
+		return symbol.getSize();
+	}
+
+	/**
+	 * @param col
+	 *            x-coordinate
+	 * @param row
+	 *            y-coordinate
+	 * @return true if the module is black
+	 */
+	public boolean isDark(int col, int row) {
+		return symbol.isDark(col, row);
+	}
+
+	/**
+	 * @return a copy of the modules of the QR code
+	 */
+	public BitMatrix toBitMatrix() {
+		BitMatrix copy = new BitMatrix(symbol.getSize());
+		copy.copyFrom(symbol);
+		return copy;
+	}
+}
@@ -0,0 +1,542 @@
+package qrcode;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+import reedsolomon.ErrorCorrectionEncoding;
+
+/**
+ * Configurable encoder of texts into QR codes.
+ *
+ * An encoder is immutable: each with method returns a new encoder with one setting
+ * changed, so a configured encoder can be shared by any number of threads. The default
+ * encoder picks the smallest version holding the text, at level L or higher, the mask with
+ * the lowest penalty score, ISO-8859-1 or UTF-8 as needed, and renders one pixel per module
+ * without quiet zone.
+ *
+ * The buffers used while encoding come from a pool shared by all the encoders, rather
+ * than from the thread, so that virtual threads do not each keep their own. A buffer is
+ * taken for the duration of one encoding and given back afterwards.
+ */
+public final class QrEncoder {
+
+	/**
+	 * Version or mask chosen for each text
+	 */
+	public static final int AUTO = -1;
+
+	/*
+	 * Number of workspaces kept in the pool, enough for every core to encode at once
+	 */
+	private static final int MAX_POOLED_WORKSPACES = 4 * Runtime.getRuntime().availableProcessors();
+
+	/*
+	 * Number of texts of a batch handled by a task without splitting it further
+	 */
+	private static final int BATCH_CHUNK = 64;
+
+	private static final CorrectionLvl[] LEVELS = CorrectionLvl.values();
+
+	private static final ConcurrentLinkedQueue<EncodingWorkspace> WORKSPACES = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger POOLED_WORKSPACES = new AtomicInteger();
+
+	private final int version;
+	private final CorrectionLvl level;
+	private final boolean boostLevel;
+	private final int mask;
+	private final Charset charset;
+	private final int scale;
+	private final int quietZone;
+
+	/**
+	 * Create an encoder with the default settings
+	 */
+	public QrEncoder() {
+		this(AUTO, CorrectionLvl.L, true, AUTO, null, 1, 0);
+	}
+
+	private QrEncoder(int version, CorrectionLvl level, boolean boostLevel, int mask, Charset charset, int scale, int quietZone) {
+		this.version = version;
+		this.level = level;
+		this.boostLevel = boostLevel;
+		this.mask = mask;
+		this.charset = charset;
+		this.scale = scale;
+		this.quietZone = quietZone;
+	}
+
+	/**
+	 * @param version
+	 *            the version of the QR codes, between 1 and 40, or {@link #AUTO} for the
+	 *            smallest one holding each text
+	 * @return an encoder using the version
+	 */
+	public QrEncoder withVersion(int version) {
+		if (version != AUTO && (version < 1 || version > QRCodeInfos.MAX_VERSION)) {
+			throw new IllegalArgumentException("The version has to be between 1 and " + QRCodeInfos.MAX_VERSION + ", or AUTO");
+		}
+		return new QrEncoder(version, level, boostLevel, mask, charset, scale, quietZone);
+	}
+
+	/**
+	 * @param level
+	 *            the lowest error correction level of the QR codes
+	 * @return an encoder using the level
+	 */
+	public QrEncoder withLevel(CorrectionLvl level) {
+		return new QrEncoder(version, Objects.requireNonNull(level), boostLevel, mask, charset, scale, quietZone);
+	}
+
+	/**
+	 * @param boostLevel
+	 *            true to use the highest error correction level that still fits in the
+	 *            version of each text
+	 * @return an encoder raising the level or not
+	 */
+	public QrEncoder withBoostLevel(boolean boostLevel) {
+		return new QrEncoder(version, level, boostLevel, mask, charset, scale, quietZone);
+	}
+
+	/**
+	 * @param mask
+	 *            the mask of the QR codes, between 0 and 7, or {@link #AUTO} for the one with
+	 *            the lowest penalty score
+	 * @return an encoder using the mask
+	 */
+	public QrEncoder withMask(int mask) {
+		if (mask != AUTO && (mask < 0 || mask > 7)) {
+			throw new IllegalArgumentException("The mask has to be between 0 and 7, or AUTO");
+		}
+		return new QrEncoder(version, level, boostLevel, mask, charset, scale, quietZone);
+	}
+
+	/**
+	 * @param charset
+	 *            the charset of the byte segments: ISO-8859-1, UTF-8, or null to use UTF-8
+	 *            only for the texts that need it
+	 * @return an encoder using the charset
+	 */
+	public QrEncoder withCharset(Charset charset) {
+		if (charset != null && !charset.equals(StandardCharsets.ISO_8859_1) && !charset.equals(StandardCharsets.UTF_8)) {
+			throw new IllegalArgumentException("Unsupported charset: " + charset);
+		}
+		return new QrEncoder(version, level, boostLevel, mask, charset, scale, quietZone);
+	}
+
+	/**
+	 * @param scale
+	 *            the number of pixels on a side of a module when rendering
+	 * @return an encoder rendering the modules at this scale
+	 */
+	public QrEncoder withScale(int scale) {
+		if (scale < 1) {
+			throw new IllegalArgumentException("The scale has to be at least 1");
+		}
+		return new QrEncoder(version, level, boostLevel, mask, charset, scale, quietZone);
+	}
+
+	/**
+	 * @param quietZone
+	 *            the number of white modules around the QR codes when rendering, 4 in the
+	 *            standard
+	 * @return an encoder rendering this quiet zone
+	 */
+	public QrEncoder withQuietZone(int quietZone) {
+		if (quietZone < 0) {
+			throw new IllegalArgumentException("The quiet zone cannot be negative");
+		}
+		return new QrEncoder(version, level, boostLevel, mask, charset, scale, quietZone);
+	}
+
+	/**
+	 * @return the version of the QR codes, or {@link #AUTO}
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the lowest error correction level of the QR codes
+	 */
+	public CorrectionLvl getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return true if the level is raised when the version has room for it
+	 */
+	public boolean isBoostLevel() {
+		return boostLevel;
+	}
+
+	/**
+	 * @return the mask of the QR codes, or {@link #AUTO}
+	 */
+	public int getMask() {
+		return mask;
+	}
+
+	/**
+	 * @return the charset of the byte segments, null if chosen for each text
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * @return the number of pixels on a side of a module when rendering
+	 */
+	public int getScale() {
+		return scale;
+	}
+
+	/**
+	 * @return the number of white modules around the QR codes when rendering
+	 */
+	public int getQuietZone() {
+		return quietZone;
+	}
+
+	/**
+	 * Encode a text into a QR code. From {@link DataEncoding#PARALLEL_ECC_VERSION} and
+	 * {@link MatrixConstruction#PARALLEL_MASKING_VERSION} on, the error correction blocks
+	 * and the masks are computed concurrently on the common pool.
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @return the QR code
+	 * @throws IllegalArgumentException
+	 *             if the text cannot be encoded with the charset, or does not fit in the
+	 *             version at the level
+	 */
+	public QrCode encode(CharSequence input) {
+		return encode(input, true);
+	}
+
+	/**
+	 * Encode a text into a QR code with a pooled workspace
+	 *
+	 * @param concurrent
+	 *            true to encode the error correction blocks and score the masks of the
+	 *            larger versions on the common pool
+	 */
+	QrCode encode(CharSequence input, boolean concurrent) {
+		EncodingWorkspace workspace = acquireWorkspace();
+		try {
+			chooseVersion(input, workspace);
+			return build(input, workspace.getVersion(), workspace.getLevel(), workspace, concurrent);
+		} finally {
+			releaseWorkspace(workspace);
+		}
+	}
+
+	/**
+	 * Encode a text into a QR code, with the buffers of a workspace owned by the caller
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param workspace
+	 *            the buffers to use
+	 * @return the QR code
+	 * @throws IllegalArgumentException
+	 *             if the text cannot be encoded with the charset, or does not fit in the
+	 *             version at the level
+	 */
+	public QrCode encode(CharSequence input, EncodingWorkspace workspace) {
+		chooseVersion(input, workspace);
+		return build(input, workspace.getVersion(), workspace.getLevel(), workspace, true);
+	}
+
+	/**
+	 * Encode many texts into QR codes, in parallel on the common pool, see
+	 * {@link #encodeBatch(List, ForkJoinPool)}
+	 *
+	 * @param inputs
+	 *            The texts to encode
+	 * @return the QR codes in the order of the texts, and the throughput of the batch
+	 * @throws IllegalArgumentException
+	 *             if a text cannot be encoded with the charset, or does not fit in the
+	 *             version at the level
+	 */
+	public BatchResult encodeBatch(List<? extends CharSequence> inputs) {
+		return encodeBatch(inputs, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Encode a stream of texts into QR codes, in parallel on the common pool, see
+	 * {@link #encodeBatch(List, ForkJoinPool)}
+	 *
+	 * @param inputs
+	 *            The texts to encode, which are collected before the encoding starts
+	 * @return the QR codes in the order of the stream, and the throughput of the batch
+	 * @throws IllegalArgumentException
+	 *             if a text cannot be encoded with the charset, or does not fit in the
+	 *             version at the level
+	 */
+	public BatchResult encodeBatch(Stream<? extends CharSequence> inputs) {
+		return encodeBatch(inputs.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Encode many texts into QR codes, in parallel on a pool.
+	 *
+	 * The version and level of every text are found first. The texts are then grouped by
+	 * version and level, and each group is encoded by its own tasks: its templates, mask
+	 * bitplanes, placement order and generator polynomial are loaded once, before its texts
+	 * are split between the threads. The masks of a symbol are scored one after the other,
+	 * as the symbols are already encoded in parallel.
+	 *
+	 * @param inputs
+	 *            The texts to encode
+	 * @param pool
+	 *            the pool running the encoding
+	 * @return the QR codes in the order of the texts, and the throughput of the batch
+	 * @throws IllegalArgumentException
+	 *             if a text cannot be encoded with the charset, or does not fit in the
+	 *             version at the level
+	 */
+	public BatchResult encodeBatch(List<? extends CharSequence> inputs, ForkJoinPool pool) {
+		long start = System.nanoTime();
+		CharSequence[] texts = inputs.toArray(new CharSequence[0]);
+		int[] groups = new int[texts.length];
+		pool.invoke(new SizingTask(texts, groups, 0, texts.length));
+
+		// counting sort of the texts by group, keeping their order inside a group
+		int[] offsets = new int[QRCodeInfos.MAX_VERSION * LEVELS.length + 1];
+		for (int group : groups) {
+			++offsets[group + 1];
+		}
+		for (int group = 1; group < offsets.length; group++) {
+			offsets[group] += offsets[group - 1];
+		}
+		int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+		int[] order = new int[texts.length];
+		for (int i = 0; i < texts.length; i++) {
+			order[next[groups[i]]++] = i;
+		}
+
+		QrCode[] codes = new QrCode[texts.length];
+		List<EncodingTask> tasks = new ArrayList<>();
+		for (int group = 0; group + 1 < offsets.length; group++) {
+			if (offsets[group] < offsets[group + 1]) {
+				tasks.add(new EncodingTask(texts, order, codes, group, offsets[group], offsets[group + 1], true));
+			}
+		}
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		return new BatchResult(Arrays.asList(codes), tasks.size(), System.nanoTime() - start);
+	}
+
+	/**
+	 * Find the version and level of a text with the settings of the encoder, and set them
+	 * as the result of the workspace
+	 */
+	void chooseVersion(CharSequence input, EncodingWorkspace workspace) {
+		SegmentEncoding.chooseVersion(input, version == AUTO ? 0 : version, level, boostLevel, charset, workspace);
+	}
+
+	/**
+	 * Write the data codewords of a text whose version and level are known
+	 *
+	 * @return the data codewords, owned by the workspace
+	 */
+	BitBuffer writeData(CharSequence input, int symbolVersion, CorrectionLvl symbolLevel, EncodingWorkspace workspace) {
+		return SegmentEncoding.writeData(input, symbolVersion, symbolLevel, charset, workspace);
+	}
+
+	/**
+	 * Build the QR code of a text whose version and level are known
+	 *
+	 * @param concurrent
+	 *            true to encode the error correction blocks and score the masks of the
+	 *            larger versions on the common pool, false to do all the work on the
+	 *            calling thread
+	 */
+	private QrCode build(CharSequence input, int symbolVersion, CorrectionLvl symbolLevel, EncodingWorkspace workspace, boolean concurrent) {
+		BitBuffer codewords = SegmentEncoding.write(input, symbolVersion, symbolLevel, charset, workspace,
+				concurrent ? DataEncoding.PARALLEL_ECC_VERSION : Integer.MAX_VALUE);
+		return place(symbolVersion, symbolLevel, codewords, concurrent ? MatrixConstruction.PARALLEL_MASKING_VERSION : Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Place the interleaved codewords of a version and level in a symbol, with the mask of
+	 * the encoder
+	 */
+	QrCode place(int symbolVersion, CorrectionLvl symbolLevel, BitBuffer codewords, int parallelVersion) {
+		if (mask == AUTO) {
+			MaskSelection selection = MatrixConstruction.selectMask(symbolVersion, symbolLevel, codewords, parallelVersion);
+			return new QrCode(symbolVersion, symbolLevel, selection.getMask(), selection.getSymbol());
+		}
+		BitMatrix symbol = MatrixConstruction.constructSymbol(symbolVersion, symbolLevel, mask);
+		MatrixConstruction.addDataInformation(symbol, symbolVersion, codewords, mask);
+		return new QrCode(symbolVersion, symbolLevel, mask, symbol);
+	}
+
+	/**
+	 * Encode a text and render it
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @return the QR code as an ARGB matrix, see {@link #render(QrCode)}
+	 * @throws IllegalArgumentException
+	 *             if the text cannot be encoded with the charset, or does not fit in the
+	 *             version at the level
+	 */
+	public int[][] render(CharSequence input) {
+		return render(encode(input));
+	}
+
+	/**
+	 * Render a QR code with the scale and quiet zone of the encoder
+	 *
+	 * @param code
+	 *            the QR code
+	 * @return a matrix where matrix[x][y] is {@link MatrixConstruction#B} or
+	 *         {@link MatrixConstruction#W}, of (size + 2 * quietZone) * scale pixels on a side
+	 */
+	public int[][] render(QrCode code) {
+		int size = code.getSize();
+		int pixels = (size + 2 * quietZone) * scale;
+		int[][] image = new int[pixels][pixels];
+		for (int[] column : image) {
+			Arrays.fill(column, MatrixConstruction.W);
+		}
+		for (int col = 0; col < size; col++) {
+			int x = (col + quietZone) * scale;
+			for (int row = 0; row < size; row++) {
+				if (code.symbol.isDark(col, row)) {
+					int y = (row + quietZone) * scale;
+					for (int dx = 0; dx < scale; dx++) {
+						Arrays.fill(image[x + dx], y, y + scale, MatrixConstruction.B);
+					}
+				}
+			}
+		}
+		return image;
+	}
+
+	/*
+	 * Finds the version and level of a range of texts, splitting it in halves until it is
+	 * small enough. The group of a text is (version - 1) * 4 + level.
+	 */
+	private final class SizingTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final CharSequence[] texts;
+		private final int[] groups;
+		private final int from;
+		private final int to;
+
+		SizingTask(CharSequence[] texts, int[] groups, int from, int to) {
+			this.texts = texts;
+			this.groups = groups;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > BATCH_CHUNK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SizingTask(texts, groups, from, middle), new SizingTask(texts, groups, middle, to));
+				return;
+			}
+			EncodingWorkspace workspace = acquireWorkspace();
+			try {
+				for (int i = from; i < to; i++) {
+					try {
+						chooseVersion(texts[i], workspace);
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException("Text " + i + " of the batch: " + e.getMessage(), e);
+					}
+					groups[i] = (workspace.getVersion() - 1) * LEVELS.length + workspace.getLevel().ordinal();
+				}
+			} finally {
+				releaseWorkspace(workspace);
+			}
+		}
+	}
+
+	/*
+	 * Encodes the texts of a group listed in a range of the order, splitting it in halves
+	 * until it is small enough. The task of the whole group loads its tables first.
+	 */
+	private final class EncodingTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final CharSequence[] texts;
+		private final int[] order;
+		private final QrCode[] codes;
+		private final int group;
+		private final int from;
+		private final int to;
+		private final boolean preload;
+
+		EncodingTask(CharSequence[] texts, int[] order, QrCode[] codes, int group, int from, int to, boolean preload) {
+			this.texts = texts;
+			this.order = order;
+			this.codes = codes;
+			this.group = group;
+			this.from = from;
+			this.to = to;
+			this.preload = preload;
+		}
+
+		@Override
+		protected void compute() {
+			int symbolVersion = group / LEVELS.length + 1;
+			CorrectionLvl symbolLevel = LEVELS[group % LEVELS.length];
+			if (preload) {
+				MatrixConstruction.preloadTemplates(symbolVersion, symbolLevel);
+				ErrorCorrectionEncoding.preloadGenerators(QRCodeInfos.getBlockECCLength(symbolVersion, symbolLevel));
+			}
+			if (to - from > BATCH_CHUNK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new EncodingTask(texts, order, codes, group, from, middle, false),
+						new EncodingTask(texts, order, codes, group, middle, to, false));
+				return;
+			}
+			EncodingWorkspace workspace = acquireWorkspace();
+			try {
+				for (int i = from; i < to; i++) {
+					int index = order[i];
+					codes[index] = build(texts[index], symbolVersion, symbolLevel, workspace, false);
+				}
+			} finally {
+				releaseWorkspace(workspace);
+			}
+		}
+	}
+
+	private static EncodingWorkspace acquireWorkspace() {
+		EncodingWorkspace workspace = WORKSPACES.poll();
+		if (workspace == null) {
+			return new EncodingWorkspace();
+		}
+		POOLED_WORKSPACES.decrementAndGet();
+		return workspace;
+	}
+
+	private static void releaseWorkspace(EncodingWorkspace workspace) {
+		if (POOLED_WORKSPACES.incrementAndGet() <= MAX_POOLED_WORKSPACES) {
+			WORKSPACES.offer(workspace);
+		} else {
+			POOLED_WORKSPACES.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,693 @@
+package qrcode;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+import qrcode.QRCodeInfos.Mode;
+
+/**
+ * Encoding of a text in segments of numeric, alphanumeric, byte and Kanji modes.
+ *
+ * The modes of the characters are chosen by dynamic programming so that the bit stream is
+ * as short as possible, mode indicators and character counts included. Every character is
+ * visited once per pass with 4 states, one per mode, so the segmentation is linear in the
+ * length of the text. The byte mode encodes the characters in ISO-8859-1, the Kanji mode
+ * the double byte characters of Shift JIS.
+ *
+ * A text with other characters is encoded in UTF-8 instead, announced by an ECI header. Its
+ * bytes are counted from the characters, so the length of the stream is known before any
+ * encoding, and they are written straight from the encoder and buffer of the
+ * workspace.
+ */
+public final class SegmentEncoding {
+
+	private static final Mode[] MODES = Mode.values();
+	private static final CorrectionLvl[] LEVELS = CorrectionLvl.values();
+	private static final int NUMERIC = Mode.NUMERIC.ordinal();
+	private static final int ALPHANUMERIC = Mode.ALPHANUMERIC.ordinal();
+	private static final int BYTE = Mode.BYTE.ordinal();
+	private static final int KANJI = Mode.KANJI.ordinal();
+
+	/*
+	 * Cost of a character in each mode, in sixths of a bit: 3 digits take 10 bits, 2
+	 * alphanumeric characters 11 bits, a byte 8 bits and a Kanji 13 bits
+	 */
+	private static final int[] CHARACTER_COST = { 20, 33, 48, 78 };
+
+	private static final int UNENCODABLE = Integer.MAX_VALUE / 2;
+
+	/*
+	 * First version of each range of versions sharing the same character count widths
+	 */
+	private static final int[] RANGE_VERSIONS = { 1, 10, 27 };
+
+	/*
+	 * ECI mode indicator and assignment number of UTF-8
+	 */
+	private static final int ECI_INDICATOR = 0b0111;
+	private static final int ECI_UTF_8 = 26;
+	private static final int ECI_HEADER_BITS = 4 + 8;
+
+	private static final String ALPHANUMERIC_CHARSET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+	/*
+	 * Value of each ASCII character in alphanumeric mode, -1 if it has none
+	 */
+	private static final byte[] ALPHANUMERIC_VALUES = alphanumericValues();
+
+	/**
+	 * Encode a text in the smallest version that can hold it at the given error correction
+	 * level, with the modes giving the shortest bit stream.
+	 *
+	 * The length of the optimal bit stream is computed for the three ranges of versions
+	 * sharing the same character count widths, and the version is found by a binary search
+	 * in the capacity tables. Only then is the text segmented and written for that version.
+	 *
+	 * The text is encoded in ISO-8859-1 and Shift JIS when it can be, in UTF-8 otherwise.
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param level
+	 *            the lowest acceptable error correction level
+	 * @param boostLevel
+	 *            true to use the highest error correction level that still fits in the
+	 *            chosen version
+	 * @return the encoded codewords with the chosen version and level
+	 * @throws IllegalArgumentException
+	 *             if the text is not valid UTF-16, or if it is too long for a version 40
+	 *             QR code of the given level
+	 */
+	public static EncodedData encode(CharSequence input, CorrectionLvl level, boolean boostLevel) {
+		return encode(input, level, boostLevel, null);
+	}
+
+	/**
+	 * Encode a text in the smallest version that can hold it at the given error correction
+	 * level, with the byte segments in the given charset, as
+	 * {@link #encode(CharSequence, CorrectionLvl, boolean)}
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param level
+	 *            the lowest acceptable error correction level
+	 * @param boostLevel
+	 *            true to use the highest error correction level that still fits in the
+	 *            chosen version
+	 * @param charset
+	 *            ISO-8859-1 for the byte and Kanji modes without ECI header, UTF-8 for an
+	 *            ECI header followed by UTF-8 bytes, or null to use UTF-8 only for the texts
+	 *            that need it
+	 * @return the encoded codewords with the chosen version and level
+	 * @throws IllegalArgumentException
+	 *             if the charset is not supported, if a character cannot be encoded in it,
+	 *             or if the text is too long for a version 40 QR code of the given level
+	 */
+	public static EncodedData encode(CharSequence input, CorrectionLvl level, boolean boostLevel, Charset charset) {
+		EncodingWorkspace workspace = new EncodingWorkspace();
+		chooseVersion(input, 0, level, boostLevel, charset, workspace);
+		BitBuffer codewords = write(input, workspace.getVersion(), workspace.getLevel(), charset, workspace, DataEncoding.PARALLEL_ECC_VERSION);
+		return new EncodedData(workspace.getVersion(), workspace.getLevel(), codewords.toBooleanArray());
+	}
+
+	/**
+	 * Encode a text as {@link #encode(CharSequence, CorrectionLvl, boolean, Charset)}, in
+	 * the buffers of a workspace. The chosen version and level are those of the workspace.
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param level
+	 *            the lowest acceptable error correction level
+	 * @param boostLevel
+	 *            true to use the highest error correction level that still fits in the
+	 *            chosen version
+	 * @param charset
+	 *            ISO-8859-1, UTF-8 or null
+	 * @param workspace
+	 *            the buffers to use, which hold the result
+	 * @return the interleaved data and error correction codewords, owned by the workspace
+	 * @throws IllegalArgumentException
+	 *             if the charset is not supported, if a character cannot be encoded in it,
+	 *             or if the text is too long for a version 40 QR code of the given level
+	 */
+	public static BitBuffer encode(CharSequence input, CorrectionLvl level, boolean boostLevel, Charset charset, EncodingWorkspace workspace) {
+		chooseVersion(input, 0, level, boostLevel, charset, workspace);
+		return write(input, workspace.getVersion(), workspace.getLevel(), charset, workspace, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Encode a text in a given version, in the buffers of a workspace. The level is that of
+	 * the workspace.
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the lowest acceptable error correction level
+	 * @param boostLevel
+	 *            true to use the highest error correction level that still fits in the
+	 *            version
+	 * @param charset
+	 *            ISO-8859-1, UTF-8 or null, see
+	 *            {@link #encode(CharSequence, CorrectionLvl, boolean, Charset)}
+	 * @param workspace
+	 *            the buffers to use, which hold the result
+	 * @return the interleaved data and error correction codewords, owned by the workspace
+	 * @throws IllegalArgumentException
+	 *             if the charset is not supported, if a character cannot be encoded in it,
+	 *             or if the text does not fit in the version at the given level
+	 */
+	public static BitBuffer encode(CharSequence input, int version, CorrectionLvl level, boolean boostLevel, Charset charset, EncodingWorkspace workspace) {
+		if (version < 1 || version > QRCodeInfos.MAX_VERSION) {
+			throw new IllegalArgumentException("The version has to be between 1 and " + QRCodeInfos.MAX_VERSION);
+		}
+		chooseVersion(input, version, level, boostLevel, charset, workspace);
+		return write(input, workspace.getVersion(), workspace.getLevel(), charset, workspace, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Find the version and level of a text without encoding it, and set them as the result
+	 * of the workspace
+	 *
+	 * @param version
+	 *            the version of the QR code, or 0 for the smallest one holding the text
+	 * @throws IllegalArgumentException
+	 *             if the text cannot be encoded, or does not fit in the version at the level
+	 */
+	static void chooseVersion(CharSequence input, int version, CorrectionLvl level, boolean boostLevel, Charset charset, EncodingWorkspace workspace) {
+		boolean utf8 = isUtf8(input, charset);
+		int length;
+		if (version == 0) {
+			int[] bits = workspace.rangeBits;
+			for (int range = 0; range < bits.length; range++) {
+				bits[range] = optimize(input, RANGE_VERSIONS[range], false, utf8, workspace);
+				if (bits[range] < 0) {
+					throw unencodable(input, utf8);
+				}
+			}
+			version = QRCodeInfos.minimumVersion(bits, level);
+			if (version < 0) {
+				throw new IllegalArgumentException("The input of " + input.length() + " characters does not fit in a QR code of level " + level);
+			}
+			length = bits[QRCodeInfos.countRange(version)];
+		} else {
+			length = optimize(input, version, false, utf8, workspace);
+			if (length < 0) {
+				throw unencodable(input, utf8);
+			}
+			int capacity = QRCodeInfos.getCapacityBits(version, level);
+			if (length > capacity) {
+				throw new IllegalArgumentException("The input needs " + length + " bits, version " + version + "-" + level + " holds " + capacity);
+			}
+		}
+		if (boostLevel) {
+			for (int higher = LEVELS.length-1; higher > level.ordinal(); higher--) {
+				if (length <= QRCodeInfos.getCapacityBits(version, LEVELS[higher])) {
+					level = LEVELS[higher];
+					break;
+				}
+			}
+		}
+		workspace.setResult(version, level);
+	}
+
+	/**
+	 * Write the data codewords of a text for a version and level and their error
+	 * correction, and set the version and level as the result of the workspace
+	 *
+	 * @param parallelVersion
+	 *            the smallest version whose error correction blocks are encoded concurrently
+	 * @return the interleaved data and error correction codewords, owned by the workspace
+	 */
+	static BitBuffer write(CharSequence input, int version, CorrectionLvl level, Charset charset, EncodingWorkspace workspace, int parallelVersion) {
+		BitBuffer data = writeData(input, version, level, charset, workspace);
+		return DataEncoding.addBlockErrorCorrection(data, version, level, workspace, parallelVersion);
+	}
+
+	/**
+	 * Write the data codewords of a text for a version and level, without their error
+	 * correction, and set the version and level as the result of the workspace
+	 *
+	 * @return the data codewords, owned by the workspace
+	 */
+	static BitBuffer writeData(CharSequence input, int version, CorrectionLvl level, Charset charset, EncodingWorkspace workspace) {
+		writeData(input, version, level, isUtf8(input, charset), workspace);
+		workspace.setResult(version, level);
+		return workspace.data;
+	}
+
+	/**
+	 * Encode a text in segments for a given version and error correction level
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @return the data codewords of the version: the segments, the terminator and the
+	 *         padding bytes
+	 * @throws IllegalArgumentException
+	 *             if the text cannot be encoded or does not fit in the version
+	 */
+	public static int[] dataCodewords(CharSequence input, int version, CorrectionLvl level) {
+		return dataCodewords(input, version, level, null);
+	}
+
+	/**
+	 * Encode a text in segments for a given version and error correction level, with the
+	 * byte segments in the given charset
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param version
+	 *            the version of the QR code
+	 * @param level
+	 *            the error correction level
+	 * @param charset
+	 *            ISO-8859-1, UTF-8 or null, see
+	 *            {@link #encode(CharSequence, CorrectionLvl, boolean, Charset)}
+	 * @return the data codewords of the version: the ECI header if any, the segments, the
+	 *         terminator and the padding bytes
+	 * @throws IllegalArgumentException
+	 *             if the text cannot be encoded or does not fit in the version
+	 */
+	public static int[] dataCodewords(CharSequence input, int version, CorrectionLvl level, Charset charset) {
+		EncodingWorkspace workspace = new EncodingWorkspace();
+		writeData(input, version, level, isUtf8(input, charset), workspace);
+		return workspace.data.toCodewords();
+	}
+
+	/**
+	 * Write the data codewords of a text into the data buffer of a workspace
+	 */
+	private static void writeData(CharSequence input, int version, CorrectionLvl level, boolean utf8, EncodingWorkspace workspace) {
+		int length = optimize(input, version, true, utf8, workspace);
+		int capacity = QRCodeInfos.getCapacityBits(version, level);
+		if (length < 0) {
+			throw unencodable(input, utf8);
+		}
+		if (length > capacity) {
+			throw new IllegalArgumentException("The input needs " + length + " bits, version " + version + "-" + level + " holds " + capacity);
+		}
+
+		BitBuffer data = workspace.data;
+		data.clear();
+		data.ensureCapacity(capacity);
+		if (utf8 && !isAscii(input)) {
+			data.append(ECI_INDICATOR, 4);
+			data.append(ECI_UTF_8, 8);
+		}
+		byte[] modes = workspace.modes;
+		int start = 0;
+		while (start < input.length()) {
+			int end = start + 1;
+			while (end < input.length() && modes[end] == modes[start]) {
+				++end;
+			}
+			writeSegment(data, input, start, end, MODES[modes[start]], version, utf8, workspace);
+			start = end;
+		}
+
+		// terminator, then zeros up to the end of the codeword and padding bytes
+		data.append(0, Math.min(4, capacity - data.getLength()));
+		DataEncoding.fillSequence(data, capacity / 8);
+	}
+
+	/**
+	 * Find the mode of each character giving the shortest bit stream for a version
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param version
+	 *            the version of the QR code, which sets the width of the character counts
+	 * @return the mode of each character
+	 * @throws IllegalArgumentException
+	 *             if a character cannot be encoded in any mode
+	 */
+	public static Mode[] optimalModes(CharSequence input, int version) {
+		return optimalModes(input, version, null);
+	}
+
+	/**
+	 * Find the mode of each character giving the shortest bit stream for a version, with the
+	 * byte segments in the given charset
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param version
+	 *            the version of the QR code, which sets the width of the character counts
+	 * @param charset
+	 *            ISO-8859-1, UTF-8 or null, see
+	 *            {@link #encode(CharSequence, CorrectionLvl, boolean, Charset)}
+	 * @return the mode of each character
+	 * @throws IllegalArgumentException
+	 *             if the charset is not supported or a character cannot be encoded
+	 */
+	public static Mode[] optimalModes(CharSequence input, int version, Charset charset) {
+		boolean utf8 = isUtf8(input, charset);
+		EncodingWorkspace workspace = new EncodingWorkspace();
+		if (optimize(input, version, true, utf8, workspace) < 0) {
+			throw unencodable(input, utf8);
+		}
+		byte[] modes = workspace.modes;
+		Mode[] result = new Mode[input.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = MODES[modes[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * Compute the length of the shortest bit stream encoding a text in a version, without
+	 * building it
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param version
+	 *            the version of the QR code, which sets the width of the character counts
+	 * @return the number of bits of the segments, terminator excluded, or -1 if a character
+	 *         cannot be encoded in any mode
+	 */
+	public static int optimalLength(CharSequence input, int version) {
+		return optimalLength(input, version, null);
+	}
+
+	/**
+	 * Compute the length of the shortest bit stream encoding a text in a version, with the
+	 * byte segments in the given charset, without building it
+	 *
+	 * @param input
+	 *            The text to encode
+	 * @param version
+	 *            the version of the QR code, which sets the width of the character counts
+	 * @param charset
+	 *            ISO-8859-1, UTF-8 or null, see
+	 *            {@link #encode(CharSequence, CorrectionLvl, boolean, Charset)}
+	 * @return the number of bits of the ECI header and the segments, terminator excluded,
+	 *         or -1 if a character cannot be encoded
+	 * @throws IllegalArgumentException
+	 *             if the charset is not supported
+	 */
+	public static int optimalLength(CharSequence input, int version, Charset charset) {
+		return optimize(input, version, false, isUtf8(input, charset), new EncodingWorkspace());
+	}
+
+	/**
+	 * Run the dynamic programming over the text. After each character, the cost of each mode
+	 * is the length of the shortest stream whose last segment is of that mode: either the
+	 * character extends the segment, or a new segment starts after the best stream of
+	 * another mode, whose length is then rounded up to a whole bit.
+	 *
+	 * In UTF-8, a character costs its number of bytes in byte mode and cannot be a Kanji.
+	 * The low surrogate of a pair costs nothing, and as it can only be a byte it always
+	 * stays in the segment of its high surrogate.
+	 *
+	 * @param keepModes
+	 *            true to write the mode of each character of the shortest stream in the
+	 *            modes of the workspace
+	 * @return the length of the shortest stream, ECI header included, or -1 if a character
+	 *         cannot be encoded
+	 */
+	private static int optimize(CharSequence input, int version, boolean keepModes, boolean utf8, EncodingWorkspace workspace) {
+		int length = input.length();
+		if (length == 0) {
+			return 0;
+		}
+		int[] header = workspace.header;
+		int[] costs = workspace.costs;
+		int[] direct = workspace.direct;
+		for (int m = 0; m < MODES.length; m++) {
+			header[m] = (4 + MODES[m].getCountBits(version)) * 6;
+			costs[m] = header[m];
+		}
+		// mode of the character for each state, 4 per character
+		byte[] choices = keepModes ? workspace.choices(length * MODES.length) : null;
+
+		boolean ascii = true;
+		for (int i = 0; i < length; i++) {
+			char c = input.charAt(i);
+			ascii &= c < 0x80;
+			boolean encodable = false;
+			for (int m = 0; m < MODES.length; m++) {
+				if (utf8 && m >= BYTE) {
+					int bytes = m == BYTE ? utf8Length(input, i) : -1;
+					direct[m] = bytes >= 0 ? costs[m] + CHARACTER_COST[m] * bytes : UNENCODABLE;
+				} else {
+					direct[m] = isEncodable(c, m) ? costs[m] + CHARACTER_COST[m] : UNENCODABLE;
+				}
+				encodable |= direct[m] < UNENCODABLE;
+			}
+			if (!encodable) {
+				return -1;
+			}
+			for (int m = 0; m < MODES.length; m++) {
+				int cost = direct[m];
+				int from = m;
+				for (int k = 0; k < MODES.length; k++) {
+					if (k != m && direct[k] < UNENCODABLE) {
+						int switched = (direct[k] + 5) / 6 * 6 + header[m];
+						if (switched < cost) {
+							cost = switched;
+							from = k;
+						}
+					}
+				}
+				costs[m] = cost;
+				if (choices != null) {
+					choices[i * MODES.length + m] = (byte) from;
+				}
+			}
+		}
+
+		int state = 0;
+		for (int m = 1; m < MODES.length; m++) {
+			if (costs[m] < costs[state]) {
+				state = m;
+			}
+		}
+		int bits = (costs[state] + 5) / 6 + (utf8 && !ascii ? ECI_HEADER_BITS : 0);
+		if (choices != null) {
+			byte[] modes = workspace.modes(length);
+			for (int i = length - 1; i >= 0; i--) {
+				state = choices[i * MODES.length + state];
+				modes[i] = (byte) state;
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * Write a segment: the mode indicator, the character count and the characters
+	 */
+	private static void writeSegment(BitBuffer data, CharSequence input, int start, int end, Mode mode, int version, boolean utf8, EncodingWorkspace workspace) {
+		if (utf8 && mode == Mode.BYTE) {
+			writeUtf8Segment(data, input, start, end, version, workspace.utf8Encoder());
+			return;
+		}
+		int count = end - start;
+		data.append(mode.getIndicator(), 4);
+		data.append(count, mode.getCountBits(version));
+		switch (mode) {
+			case NUMERIC:
+				for (int i = start; i < end; i += 3) {
+					int digits = Math.min(3, end - i);
+					int value = 0;
+					for (int j = i; j < i + digits; j++) {
+						value = value * 10 + (input.charAt(j) - '0');
+					}
+					data.append(value, digits * 3 + 1);
+				}
+				break;
+			case ALPHANUMERIC:
+				for (int i = start; i < end; i += 2) {
+					if (i + 1 < end) {
+						int value = ALPHANUMERIC_VALUES[input.charAt(i)] * 45 + ALPHANUMERIC_VALUES[input.charAt(i + 1)];
+						data.append(value, 11);
+					} else {
+						data.append(ALPHANUMERIC_VALUES[input.charAt(i)], 6);
+					}
+				}
+				break;
+			case BYTE:
+				for (int i = start; i < end; i++) {
+					data.append(input.charAt(i), 8);
+				}
+				break;
+			case KANJI:
+				for (int i = start; i < end; i++) {
+					data.append(KanjiTable.VALUES[input.charAt(i)], 13);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Write a byte segment in UTF-8. The count is the number of bytes, computed from the
+	 * characters, and the bytes are written as they come out of the encoder of the workspace.
+	 */
+	private static void writeUtf8Segment(BitBuffer data, CharSequence input, int start, int end, int version, EncodingWorkspace.Utf8Encoder utf8) {
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			count += utf8Length(input, i);
+		}
+		data.append(Mode.BYTE.getIndicator(), 4);
+		data.append(count, Mode.BYTE.getCountBits(version));
+
+		CharsetEncoder encoder = utf8.encoder.reset();
+		ByteBuffer buffer = utf8.buffer;
+		CharBuffer in = CharBuffer.wrap(input, start, end);
+		CoderResult result;
+		do {
+			buffer.clear();
+			result = encoder.encode(in, buffer, true);
+			if (result.isError()) {
+				throw new IllegalArgumentException("The input is not valid UTF-16 at index " + in.position());
+			}
+			writeBuffer(data, buffer);
+		} while (result.isOverflow());
+		do {
+			buffer.clear();
+			result = encoder.flush(buffer);
+			writeBuffer(data, buffer);
+		} while (result.isOverflow());
+	}
+
+	/**
+	 * Write the bytes written to the buffer since it was cleared
+	 */
+	private static void writeBuffer(BitBuffer data, ByteBuffer buffer) {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			data.append(buffer.get() & 0xFF, 8);
+		}
+	}
+
+	private static boolean isEncodable(char c, int mode) {
+		if (mode == NUMERIC) {
+			return c >= '0' && c <= '9';
+		} else if (mode == ALPHANUMERIC) {
+			return c < 128 && ALPHANUMERIC_VALUES[c] >= 0;
+		} else if (mode == BYTE) {
+			return c <= 0xFF;
+		} else {
+			return KanjiTable.VALUES[c] >= 0;
+		}
+	}
+
+	/**
+	 * Number of bytes of the character at an index in UTF-8: 4 for a high surrogate
+	 * followed by a low one, 0 for that low surrogate, -1 for an unpaired surrogate
+	 */
+	private static int utf8Length(CharSequence input, int index) {
+		char c = input.charAt(index);
+		if (c < 0x80) {
+			return 1;
+		} else if (c < 0x800) {
+			return 2;
+		} else if (Character.isHighSurrogate(c)) {
+			return index + 1 < input.length() && Character.isLowSurrogate(input.charAt(index + 1)) ? 4 : -1;
+		} else if (Character.isLowSurrogate(c)) {
+			return index > 0 && Character.isHighSurrogate(input.charAt(index - 1)) ? 0 : -1;
+		}
+		return 3;
+	}
+
+	/**
+	 * Whether the byte segments of a text are encoded in UTF-8 with the given charset
+	 */
+	private static boolean isUtf8(CharSequence input, Charset charset) {
+		if (charset == null) {
+			return unencodableIndex(input, false) >= 0;
+		} else if (charset.equals(StandardCharsets.UTF_8)) {
+			return true;
+		} else if (charset.equals(StandardCharsets.ISO_8859_1)) {
+			return false;
+		}
+		throw new IllegalArgumentException("Unsupported charset: " + charset);
+	}
+
+	private static boolean isAscii(CharSequence input) {
+		for (int i = 0; i < input.length(); i++) {
+			if (input.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int unencodableIndex(CharSequence input, boolean utf8) {
+		for (int i = 0; i < input.length(); i++) {
+			char c = input.charAt(i);
+			if (utf8 ? utf8Length(input, i) < 0 : !isEncodable(c, BYTE) && !isEncodable(c, KANJI)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static IllegalArgumentException unencodable(CharSequence input, boolean utf8) {
+		int index = unencodableIndex(input, utf8);
+		return new IllegalArgumentException("The input contains a character that cannot be encoded in "
+				+ (utf8 ? "UTF-8" : "ISO-8859-1 or Shift JIS") + " at index " + index + ": U+" + String.format("%04X", (int) input.charAt(index)));
+	}
+
+	private static byte[] alphanumericValues() {
+		byte[] values = new byte[128];
+		Arrays.fill(values, (byte) -1);
+		for (int i = 0; i < ALPHANUMERIC_CHARSET.length(); i++) {
+			values[ALPHANUMERIC_CHARSET.charAt(i)] = (byte) i;
+		}
+		return values;
+	}
+
+	/*
+	 * Value in Kanji mode of each character, -1 for the characters without a double byte
+	 * Shift JIS code in the ranges 0x8140-0x9FFC and 0xE040-0xEBBF. The table is built on
+	 * first use by decoding every code of the two ranges, and stays empty if the Java
+	 * runtime has no Shift JIS charset.
+	 */
+	private static final class KanjiTable {
+		static final short[] VALUES = kanjiValues();
+
+		private static short[] kanjiValues() {
+			short[] values = new short[Character.MAX_VALUE + 1];
+			Arrays.fill(values, (short) -1);
+			if (!Charset.isSupported("Shift_JIS")) {
+				return values;
+			}
+			CharsetDecoder decoder = Charset.forName("Shift_JIS").newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT);
+			ByteBuffer in = ByteBuffer.allocate(2);
+			CharBuffer out = CharBuffer.allocate(2);
+			for (int code = 0x8140; code <= 0xEBBF; code++) {
+				if (code > 0x9FFC && code < 0xE040) {
+					continue;
+				}
+				in.clear();
+				in.put((byte) (code >>> 8)).put((byte) code).flip();
+				out.clear();
+				decoder.reset();
+				CoderResult result = decoder.decode(in, out, true);
+				if (result.isError() || out.position() != 1 || in.hasRemaining()) {
+					continue;
+				}
+				char c = out.get(0);
+				if (values[c] < 0) {
+					int offset = code - (code <= 0x9FFC ? 0x8140 : 0xC140);
+					values[c] = (short) ((offset >>> 8) * 0xC0 + (offset & 0xFF));
+				}
+			}
+			return values;
+		}
+	}
+}
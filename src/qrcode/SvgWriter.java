@@ -0,0 +1,135 @@
+package qrcode;
+
+import java.io.IOException;
+
+/**
+ * Writer of QR codes as SVG documents.
+ *
+ * The dark modules are drawn by a single path stroked one module wide, in which each
+ * horizontal run of dark modules is one line: a move relative to the end of the previous
+ * run, then a horizontal line, about 8 characters per run. The coordinates are in modules,
+ * the quiet zone included, so that the document scales to any size; the width and height
+ * of the image only give its default size.
+ *
+ * The document is written piece by piece to an {@link Appendable}, without building it
+ * in memory first. Writing to a Writer is best done through a BufferedWriter. A writer
+ * holds no state besides its settings and can be shared between threads.
+ */
+public final class SvgWriter {
+
+	private final int scale;
+	private final int quietZone;
+
+	/**
+	 * Create a writer
+	 *
+	 * @param scale
+	 *            the default number of pixels on a side of a module
+	 * @param quietZone
+	 *            the number of white modules around the QR codes, 4 in the standard
+	 */
+	public SvgWriter(int scale, int quietZone) {
+		if (scale < 1) {
+			throw new IllegalArgumentException("The scale has to be at least 1");
+		}
+		if (quietZone < 0) {
+			throw new IllegalArgumentException("The quiet zone cannot be negative");
+		}
+		this.scale = scale;
+		this.quietZone = quietZone;
+	}
+
+	/**
+	 * Create a writer with the scale and quiet zone of an encoder
+	 *
+	 * @param encoder
+	 *            the encoder whose rendering settings are used
+	 */
+	public SvgWriter(QrEncoder encoder) {
+		this(encoder.getScale(), encoder.getQuietZone());
+	}
+
+	/**
+	 * Write a QR code as an SVG document
+	 *
+	 * @param code
+	 *            the QR code
+	 * @param out
+	 *            the destination of the document
+	 * @throws IOException
+	 *             if the destination cannot be written
+	 */
+	public void write(QrCode code, Appendable out) throws IOException {
+		write(code.symbol, out);
+	}
+
+	/**
+	 * Write the modules of a symbol as an SVG document
+	 *
+	 * @param symbol
+	 *            the modules of the QR code
+	 * @param out
+	 *            the destination of the document
+	 * @throws IOException
+	 *             if the destination cannot be written
+	 */
+	public void write(BitMatrix symbol, Appendable out) throws IOException {
+		int size = symbol.getSize();
+		int modules = size + 2 * quietZone;
+
+		out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 ");
+		appendInt(out, modules);
+		out.append(' ');
+		appendInt(out, modules);
+		out.append("\" width=\"");
+		appendInt(out, modules * scale);
+		out.append("\" height=\"");
+		appendInt(out, modules * scale);
+		out.append("\" shape-rendering=\"crispEdges\">\n<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>\n<path stroke=\"#000\" d=\"M0 .5");
+
+		// the lines run through the middle of the modules, half a module below their top
+		int lastX = 0;
+		int lastY = 0;
+		for (int row = 0; row < size; row++) {
+			int col = 0;
+			while (col < size) {
+				if (!symbol.isDark(col, row)) {
+					++col;
+					continue;
+				}
+				int start = col;
+				while (col < size && symbol.isDark(col, row)) {
+					++col;
+				}
+				int x = start + quietZone;
+				int y = row + quietZone;
+				out.append('m');
+				appendInt(out, x - lastX);
+				out.append(' ');
+				appendInt(out, y - lastY);
+				out.append('h');
+				appendInt(out, col - start);
+				lastX = x + col - start;
+				lastY = y;
+			}
+		}
+		out.append("\"/>\n</svg>\n");
+	}
+
+	/**
+	 * Append the decimal digits of a number without creating a String
+	 */
+	private static void appendInt(Appendable out, int value) throws IOException {
+		if (value < 0) {
+			out.append('-');
+			value = -value;
+		}
+		int divisor = 1;
+		while (value / divisor >= 10) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			out.append((char) ('0' + value / divisor % 10));
+		}
+	}
+}
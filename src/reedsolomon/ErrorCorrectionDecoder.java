@@ -0,0 +1,313 @@
+package reedsolomon;
+
+/**
+ * Reed-Solomon decoder for the codewords produced by {@link ErrorCorrectionEncoding}.
+ *
+ * {@link #verify(int[], int, int, int)} only computes the syndromes and is meant to be
+ * called on every generated symbol. The instance methods correct errors and erasures with
+ * Berlekamp-Massey, Chien search and Forney. An instance holds the scratch buffers of the
+ * decoding, so that nothing is allocated, and must not be shared between threads.
+ */
+public final class ErrorCorrectionDecoder {
+
+	/*
+	 * A Reed-Solomon block over GF(256) holds at most 255 codewords
+	 */
+	private static final int MAX_LENGTH = 255;
+
+	private final int[] syndromes = new int[MAX_LENGTH];
+	private final int[] locator = new int[MAX_LENGTH+1];
+	private final int[] previous = new int[MAX_LENGTH+1];
+	private final int[] temp = new int[MAX_LENGTH+1];
+	private final int[] evaluator = new int[MAX_LENGTH];
+	private final int[] positions = new int[MAX_LENGTH];
+	private final int[] magnitudes = new int[MAX_LENGTH];
+
+	/**
+	 * Check that a block of codewords has no error, i.e. that all its syndromes are zero
+	 *
+	 * @param codewords
+	 *            the array containing the block, data followed by ECC
+	 * @param offset
+	 *            the index of the first codeword of the block
+	 * @param length
+	 *            the number of codewords of the block, ECC included
+	 * @param eccLength
+	 *            the number of ECC of the block
+	 * @return true if the block is a valid codeword
+	 */
+	public static boolean verify(int[] codewords, int offset, int length, int eccLength) {
+		checkLength(length, eccLength);
+		for(int i=0;i<eccLength;i++) {
+			if(syndrome(codewords, offset, length, i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Correct the errors in a block of codewords, in place
+	 *
+	 * @param codewords
+	 *            the array containing the block, data followed by ECC
+	 * @param offset
+	 *            the index of the first codeword of the block
+	 * @param length
+	 *            the number of codewords of the block, ECC included
+	 * @param eccLength
+	 *            the number of ECC of the block
+	 * @return the number of corrected codewords, or -1 if there are too many errors to
+	 *         correct them. In that case the block is left unchanged
+	 */
+	public int decode(int[] codewords, int offset, int length, int eccLength) {
+		return decode(codewords, offset, length, eccLength, null, 0);
+	}
+
+	/**
+	 * Correct the errors and erasures in a block of codewords, in place. An erasure is a
+	 * codeword known to be wrong (e.g. unreadable), which costs half as much correction
+	 * capacity as an error: 2*errors + erasures must not exceed eccLength.
+	 *
+	 * @param codewords
+	 *            the array containing the block, data followed by ECC
+	 * @param offset
+	 *            the index of the first codeword of the block
+	 * @param length
+	 *            the number of codewords of the block, ECC included
+	 * @param eccLength
+	 *            the number of ECC of the block
+	 * @param erasures
+	 *            the indexes of the erased codewords, relative to offset
+	 * @param erasureCount
+	 *            the number of erasures in the erasures array
+	 * @return the number of corrected codewords, or -1 if there are too many errors to
+	 *         correct them. In that case the block is left unchanged
+	 */
+	public int decode(int[] codewords, int offset, int length, int eccLength, int[] erasures, int erasureCount) {
+		checkLength(length, eccLength);
+		if(erasureCount > eccLength) {
+			return -1;
+		}
+
+		boolean hasErrors = false;
+		for(int i=0;i<eccLength;i++) {
+			syndromes[i] = syndrome(codewords, offset, length, i);
+			hasErrors |= syndromes[i] != 0;
+		}
+		if(!hasErrors) {
+			return 0;
+		}
+
+		int degree = findLocator(length, eccLength, erasures, erasureCount);
+		if(degree < 0 || findErrorPositions(length, degree) != degree) {
+			return -1;
+		}
+
+		computeEvaluator(eccLength, degree);
+		for(int e=0;e<degree;e++) {
+			magnitudes[e] = errorMagnitude(length, eccLength, positions[e], degree);
+			if(magnitudes[e] < 0) {
+				return -1;
+			}
+		}
+		for(int e=0;e<degree;e++) {
+			codewords[offset+positions[e]] ^= magnitudes[e];
+		}
+		return degree;
+	}
+
+	/**
+	 * Compute the error locator polynomial with the Berlekamp-Massey algorithm, starting
+	 * from the locator of the erasures
+	 *
+	 * @return the degree of the locator, i.e. the number of errata, or -1 if it is too high
+	 */
+	private int findLocator(int length, int eccLength, int[] erasures, int erasureCount) {
+		clear(locator, eccLength+1);
+		locator[0] = 1;
+		for(int e=0;e<erasureCount;e++) {
+			int position = erasures[e];
+			if(position < 0 || position >= length) {
+				throw new IllegalArgumentException("The erasure "+position+" is outside of the block");
+			}
+			/*
+			 * multiply by (1 + X x) where X = a^(degree of the erased codeword)
+			 */
+			int logX = length-1-position;
+			for(int j=e+1;j>0;j--) {
+				locator[j] ^= mulByPower(locator[j-1], logX);
+			}
+		}
+		System.arraycopy(locator, 0, previous, 0, eccLength+1);
+
+		int errata = erasureCount;
+		for(int r=erasureCount+1;r<=eccLength;r++) {
+			int discrepancy = 0;
+			for(int j=0;j<r;j++) {
+				discrepancy ^= ErrorCorrectionEncoding.mul(locator[j], syndromes[r-1-j]);
+			}
+
+			/*
+			 * previous = x * previous
+			 */
+			System.arraycopy(previous, 0, previous, 1, eccLength);
+			previous[0] = 0;
+
+			if(discrepancy != 0) {
+				int logDiscrepancy = ErrorCorrectionEncoding.log(discrepancy);
+				for(int j=0;j<=eccLength;j++) {
+					temp[j] = locator[j] ^ mulByPower(previous[j], logDiscrepancy);
+				}
+				if(2*errata <= r+erasureCount-1) {
+					errata = r+erasureCount-errata;
+					int logInverse = 255-logDiscrepancy;
+					for(int j=0;j<=eccLength;j++) {
+						previous[j] = mulByPower(locator[j], logInverse);
+					}
+				}
+				System.arraycopy(temp, 0, locator, 0, eccLength+1);
+			}
+		}
+
+		int degree = eccLength;
+		while(degree > 0 && locator[degree] == 0) {
+			--degree;
+		}
+		if(degree != errata || 2*errata-erasureCount > eccLength) {
+			return -1;
+		}
+		return degree;
+	}
+
+	/**
+	 * Find the roots of the locator with a Chien search. A root X^-1 where X = a^d gives an
+	 * error on the codeword of degree d, i.e. at index length-1-d.
+	 *
+	 * @return the number of roots found
+	 */
+	private int findErrorPositions(int length, int degree) {
+		int found = 0;
+		for(int index=0;index<length;index++) {
+			int logInverse = (255 - (length-1-index)) % 255;
+			if(evaluate(locator, degree, logInverse) == 0) {
+				positions[found++] = index;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Compute the error evaluator polynomial S(x) * locator(x) mod x^eccLength
+	 */
+	private void computeEvaluator(int eccLength, int degree) {
+		for(int i=0;i<eccLength;i++) {
+			int value = 0;
+			for(int j=0;j<=Math.min(i, degree);j++) {
+				value ^= ErrorCorrectionEncoding.mul(locator[j], syndromes[i-j]);
+			}
+			evaluator[i] = value;
+		}
+	}
+
+	/**
+	 * Compute the value of an error with the Forney algorithm:
+	 * e = X * evaluator(X^-1) / locator'(X^-1)
+	 *
+	 * @return the value to XOR with the codeword, or -1 if the derivative is zero
+	 */
+	private int errorMagnitude(int length, int eccLength, int index, int degree) {
+		int logX = length-1-index;
+		int logInverse = (255 - logX) % 255;
+
+		int numerator = evaluate(evaluator, eccLength-1, logInverse);
+
+		/*
+		 * The formal derivative only keeps the odd powers
+		 */
+		int denominator = 0;
+		for(int j=1;j<=degree;j+=2) {
+			denominator ^= mulByPower(locator[j], (logInverse*(j-1)) % 255);
+		}
+		if(denominator == 0) {
+			return -1;
+		}
+		if(numerator == 0) {
+			return 0;
+		}
+		int log = ErrorCorrectionEncoding.log(numerator) - ErrorCorrectionEncoding.log(denominator) + logX;
+		return ErrorCorrectionEncoding.exp(((log % 255) + 255) % 255);
+	}
+
+	/**
+	 * Evaluate a polynomial at a^logX with Horner's method
+	 *
+	 * @param poly
+	 *            the coefficients, index 0 being the constant term
+	 * @param degree
+	 *            the degree of the polynomial
+	 */
+	private static int evaluate(int[] poly, int degree, int logX) {
+		int value = 0;
+		for(int j=degree;j>=0;j--) {
+			value = mulByPower(value, logX) ^ poly[j];
+		}
+		return value;
+	}
+
+	/**
+	 * Compute the i-th syndrome of a block, i.e. the value of the block polynomial at a^i
+	 */
+	private static int syndrome(int[] codewords, int offset, int length, int i) {
+		byte[] table = PowerTables.MUL_BY_POWER;
+		int row = i << 8;
+		int value = 0;
+		for(int j=offset;j<offset+length;j++) {
+			value = (table[row | value] & 0xFF) ^ (codewords[j] & 0xFF);
+		}
+		return value;
+	}
+
+	/*
+	 * Products of every element of GF(256) by a^i for i from 0 to 254, the product of v by a^i
+	 * being at index i*256+v. The 64 KiB table is only built when syndromes are first needed.
+	 */
+	private static final class PowerTables {
+		static final byte[] MUL_BY_POWER = mulByPowerTable();
+
+		private static byte[] mulByPowerTable() {
+			byte[] table = new byte[255*256];
+			for(int i=0;i<255;i++) {
+				for(int v=0;v<256;v++) {
+					table[(i<<8) | v] = (byte) mulByPower(v, i);
+				}
+			}
+			return table;
+		}
+	}
+
+	/**
+	 * Multiply an element of GF(256) by a^power
+	 * @param value the element
+	 * @param power the exponent, between 0 and 255 included
+	 * @return value * a^power
+	 */
+	private static int mulByPower(int value, int power) {
+		if(value == 0) {
+			return 0;
+		}
+		return ErrorCorrectionEncoding.exp(ErrorCorrectionEncoding.log(value) + power);
+	}
+
+	private static void clear(int[] array, int length) {
+		for(int i=0;i<length;i++) {
+			array[i] = 0;
+		}
+	}
+
+	private static void checkLength(int length, int eccLength) {
+		if(length > MAX_LENGTH || eccLength > length || eccLength < 0) {
+			throw new IllegalArgumentException("A block has at most "+MAX_LENGTH+" codewords, ECC included");
+		}
+	}
+}
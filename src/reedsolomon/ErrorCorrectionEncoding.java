@@ -1,5 +1,7 @@
 package reedsolomon;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 public final class ErrorCorrectionEncoding {
 	
 	
@@ -49,6 +51,39 @@ public final class ErrorCorrectionEncoding {
 	}
 
 
+	/*
+	 * Exponent table of length 512 so that the sum of two logarithms never needs
+	 * to be reduced modulo 255 before the lookup
+	 */
+	private static final int[] EXP_TABLE = expTableGenerator();
+
+	private static int[] expTableGenerator() {
+		int[] table = new int[512];
+		for(int i=0;i<table.length;i++) {
+			table[i] = LOG_TABLE[i % 255];
+		}
+		return table;
+	}
+
+	/*
+	 * Generator polynomials in logarithmic form, indexed by the number of error
+	 * correction codewords. They are computed on first use and never modified
+	 * afterwards, hence they can be read concurrently without locking.
+	 */
+	private static final int MAX_ECC_LENGTH = 254;
+	private static final AtomicReferenceArray<int[]> GENERATORS = new AtomicReferenceArray<>(MAX_ECC_LENGTH+1);
+
+	/**
+	 * Compute in advance the generator polynomials for the given numbers of error
+	 * correction codewords, so that the first encodings do not have to do it.
+	 * @param eccLengths the numbers of error correction codewords that will be used
+	 */
+	public static void preloadGenerators(int... eccLengths) {
+		for(int n:eccLengths) {
+			generator(n);
+		}
+	}
+
 	/**
 	 * Generate a given number of error correction codewords (ECC) for the given sequence of bytes
 	 * @param messageCodeWords the sequence of bytes from which the ECC are generated
@@ -56,131 +91,296 @@ public final class ErrorCorrectionEncoding {
 	 * @return An array of ECC bytes for messageCodeWords
 	 */
 	public static int[] encode(int[] messageCodeWords,int errorCorrectionCodewords) {
-		
-		/*
-		 * Generate the message polynomial
-		 */
-		GalloisNumber[] messagePoly = new GalloisNumber[messageCodeWords.length];
-		int i= messageCodeWords.length-1;
-		for(int word:messageCodeWords) {
-			messagePoly[i--] =GalloisNumber.getGalloisNumber( word & 0xFF); 
+		int[] errorCodewords = new int[errorCorrectionCodewords];
+		encode(messageCodeWords, 0, messageCodeWords.length, generator(errorCorrectionCodewords), errorCodewords, 0);
+		return errorCodewords;
+	}
+
+	/**
+	 * Generate the error correction codewords of a part of an array into a caller-supplied buffer,
+	 * using the cached generator polynomial.
+	 * 
+	 * @param message
+	 *            the array containing the bytes from which the ECC are generated
+	 * @param offset
+	 *            the index of the first byte of the message
+	 * @param length
+	 *            the number of bytes of the message
+	 * @param ecc
+	 *            the array where the ECC are written
+	 * @param eccOffset
+	 *            the index of the first ECC in ecc
+	 * @param eccLength
+	 *            the number of ECC to generate
+	 */
+	public static void encode(int[] message, int offset, int length, int[] ecc, int eccOffset, int eccLength) {
+		encode(message, offset, length, generator(eccLength), ecc, eccOffset);
+	}
+
+	/**
+	 * Generate the error correction codewords of a part of an array into a caller-supplied buffer.
+	 * The division by the generator polynomial is done as a linear feedback shift register
+	 * directly on the output buffer, so that nothing is allocated.
+	 * 
+	 * @param message
+	 *            the array containing the bytes from which the ECC are generated
+	 * @param offset
+	 *            the index of the first byte of the message
+	 * @param length
+	 *            the number of bytes of the message
+	 * @param generator
+	 *            the generator polynomial as returned by {@link #generatorLog(int)}, its
+	 *            length is the number of ECC to generate
+	 * @param ecc
+	 *            the array where the ECC are written
+	 * @param eccOffset
+	 *            the index of the first ECC in ecc
+	 */
+	public static void encode(int[] message, int offset, int length, int[] generator, int[] ecc, int eccOffset) {
+		int eccLength = generator.length;
+		int eccEnd = eccOffset + eccLength;
+		for(int i=eccOffset;i<eccEnd;i++) {
+			ecc[i] = 0;
 		}
-		
-		/*
-		 * Create the generator polynomial
-		 */
-		GalloisNumber[] generatorPoly = polynomialGenerator(errorCorrectionCodewords);
-		
-		GalloisNumber[] remainder = messagePoly;
-		
-		for(int step=0;step<messageCodeWords.length;step++ ) {
-			int remainderSize = errorCorrectionCodewords<remainder.length? remainder.length-1:errorCorrectionCodewords;
-			GalloisNumber[] nextRemainder = new  GalloisNumber[remainderSize];
-			
-			
-			/*
-			 * multiply the generator polynomial
-			 */
-			GalloisNumber[] divisor = new GalloisNumber[generatorPoly.length];
-			GalloisNumber mul = remainder[remainder.length-1];
-			i = 0;
-			for(GalloisNumber coeff:generatorPoly) {
-				divisor[i++] = coeff.mul(mul);
+		if(eccLength == 0) {
+			return;
+		}
+
+		for(int i=offset;i<offset+length;i++) {
+			int factor = (message[i] ^ ecc[eccOffset]) & 0xFF;
+			System.arraycopy(ecc, eccOffset+1, ecc, eccOffset, eccLength-1);
+			ecc[eccEnd-1] = 0;
+
+			if(factor != 0) {
+				int logFactor = ANTILOG_TABLE[factor];
+				for(int j=0;j<eccLength;j++) {
+					ecc[eccOffset+j] ^= EXP_TABLE[logFactor + generator[j]];
+				}
 			}
-			
-			/*
-			 * XOR result with remainder
-			 */
-			for(int j=1;j<=remainderSize;j++) {
-				GalloisNumber temp = null;
-				if(divisor.length-j-1 >=0 && remainder.length-j-1>=0) {
-					temp = divisor[divisor.length-j-1].add(remainder[remainder.length-j-1]);
-				}else if(remainder.length-j-1>=0){
-					temp = remainder[remainder.length-j-1];
-				}else {
-					temp = divisor[divisor.length-j-1];
+		}
+	}
+
+	/*
+	 * Number of messages encoded together by encodeBatch, one per byte of a long
+	 */
+	private static final int LANES = 8;
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	/**
+	 * Generate the error correction codewords of many messages of the same length.
+	 * 
+	 * The messages are processed by groups of 8: the bytes found at the same position
+	 * in the 8 messages are packed in a long and the division by the generator polynomial
+	 * is done on the 8 lanes at once. The messages left over are encoded one by one.
+	 * The result is the same as calling {@link #encode(int[], int)} on each message.
+	 * 
+	 * @param messages
+	 *            the messages, which must all have the same length
+	 * @param ecc
+	 *            the arrays where the ECC of each message are written, each of length at least
+	 *            errorCorrectionCodewords
+	 * @param errorCorrectionCodewords
+	 *            the number of ECC to generate for each message
+	 */
+	public static void encodeBatch(int[][] messages, int[][] ecc, int errorCorrectionCodewords) {
+		if(messages.length != ecc.length) {
+			throw new IllegalArgumentException("There must be as many ECC arrays as messages");
+		}
+		int[] generator = generator(errorCorrectionCodewords);
+		int count = messages.length;
+		int packed = errorCorrectionCodewords == 0 ? 0 : count - count % LANES;
+
+		if(packed > 0) {
+			int length = messages[0].length;
+			int[] generatorValues = new int[errorCorrectionCodewords];
+			for(int j=0;j<errorCorrectionCodewords;j++) {
+				generatorValues[j] = EXP_TABLE[generator[j]];
+			}
+			long[] remainder = new long[errorCorrectionCodewords];
+
+			for(int first=0;first<packed;first+=LANES) {
+				for(int lane=0;lane<LANES;lane++) {
+					if(messages[first+lane].length != length) {
+						throw new IllegalArgumentException("All the messages must have the same length");
+					}
+				}
+				encodeLanes(messages, first, length, generatorValues, remainder);
+
+				for(int j=0;j<errorCorrectionCodewords;j++) {
+					long word = remainder[j];
+					for(int lane=0;lane<LANES;lane++) {
+						ecc[first+lane][j] = (int) (word >>> (8*lane)) & 0xFF;
+					}
 				}
-				
-				nextRemainder[remainderSize-j] = temp;
 			}
-			
-			remainder=nextRemainder;
-			
 		}
-		
-		
-		/*
-		 * Generate error correction codewords
-		 */
-		int[] errorCodewords = new int[errorCorrectionCodewords];
-		i= errorCorrectionCodewords-1;
-		for(GalloisNumber coeff:remainder) {
-			errorCodewords[i--] =  0xFF & coeff.represent();
+
+		for(int m=packed;m<count;m++) {
+			encode(messages[m], 0, messages[m].length, generator, ecc[m], 0);
 		}
-		return errorCodewords;
 	}
-	
-	
-	private final static class GalloisNumber{
-		final int p;
-		
-		public GalloisNumber(int power) {
-			p=power;
+
+	/**
+	 * Divide 8 messages at once by the generator polynomial, one message per byte of the words
+	 * 
+	 * @param messages
+	 *            the messages
+	 * @param first
+	 *            the index of the first of the 8 messages to encode
+	 * @param length
+	 *            the length of the messages
+	 * @param generator
+	 *            the coefficients of the generator polynomial in normal form, leading
+	 *            coefficient omitted
+	 * @param remainder
+	 *            the words where the packed ECC are written
+	 */
+	private static void encodeLanes(int[][] messages, int first, int length, int[] generator, long[] remainder) {
+		int eccLength = remainder.length;
+		for(int j=0;j<eccLength;j++) {
+			remainder[j] = 0;
 		}
-		
-		public static GalloisNumber getGalloisNumber(int number) {
-			if(number>255) {
-				number=number^285;
+
+		for(int i=0;i<length;i++) {
+			long word = 0;
+			for(int lane=0;lane<LANES;lane++) {
+				word |= (long) (messages[first+lane][i] & 0xFF) << (8*lane);
+			}
+
+			long f0 = word ^ remainder[0];
+			System.arraycopy(remainder, 1, remainder, 0, eccLength-1);
+			remainder[eccLength-1] = 0;
+
+			/*
+			 * f0 * x^b for every bit b of a byte, so that the product by any constant
+			 * is the XOR of the words selected by the bits of the constant
+			 */
+			long f1 = xtime(f0);
+			long f2 = xtime(f1);
+			long f3 = xtime(f2);
+			long f4 = xtime(f3);
+			long f5 = xtime(f4);
+			long f6 = xtime(f5);
+			long f7 = xtime(f6);
+
+			for(int j=0;j<eccLength;j++) {
+				long g = generator[j];
+				remainder[j] ^= (f0 & -(g & 1))
+						^ (f1 & -((g >>> 1) & 1))
+						^ (f2 & -((g >>> 2) & 1))
+						^ (f3 & -((g >>> 3) & 1))
+						^ (f4 & -((g >>> 4) & 1))
+						^ (f5 & -((g >>> 5) & 1))
+						^ (f6 & -((g >>> 6) & 1))
+						^ (f7 & -((g >>> 7) & 1));
 			}
-			return new GalloisNumber(ANTILOG_TABLE[number]);
 		}
-		
-		public GalloisNumber add(GalloisNumber n2) {
-			int res = this.represent() ^ n2.represent();
-			return getGalloisNumber(res);
+	}
+
+	/**
+	 * Multiply by x (i.e. by 2) each of the 8 elements of GF(256) packed in a long
+	 * @param word the packed elements
+	 * @return the packed products
+	 */
+	private static long xtime(long word) {
+		long overflow = (word & HIGH_BITS) >>> 7;
+		return ((word & LOW_BITS) << 1) ^ (overflow * 0x1D);
+	}
+
+	/**
+	 * Get the generator polynomial used to generate n error correction codewords.
+	 * The returned array is a copy that the caller is free to modify.
+	 * 
+	 * @param n
+	 *            the number of error correction codewords
+	 * @return the logarithms of the coefficients of the generator polynomial, from the
+	 *         coefficient of x^(n-1) down to the constant term
+	 */
+	public static int[] generatorLog(int n) {
+		return generator(n).clone();
+	}
+
+	/**
+	 * Get the cached generator polynomial for n error correction codewords, computing
+	 * it if this is its first use. The returned array must not be modified.
+	 * 
+	 * @param n
+	 *            the number of error correction codewords
+	 * @return the shared generator polynomial in logarithmic form
+	 */
+	static int[] generator(int n) {
+		if(n<0 || n>MAX_ECC_LENGTH) {
+			throw new IllegalArgumentException("The number of error correction codewords has to be between 0 and "+MAX_ECC_LENGTH);
 		}
-		
-		public GalloisNumber mul(GalloisNumber n2) {
-			if(p<0 || n2.p<0) {
-				return new GalloisNumber(-1);
+		int[] generator = GENERATORS.get(n);
+		if(generator == null) {
+			generator = computeGenerator(n);
+			if(!GENERATORS.compareAndSet(n, null, generator)) {
+				generator = GENERATORS.get(n);
 			}
-			return new GalloisNumber((n2.p +p)%255 );
 		}
-		
-		public int represent() {
-			if(p<0) {
-				return 0;
+		return generator;
+	}
+
+	/**
+	 * Compute the generator polynomial used to generate n error correction codewords.
+	 * The polynomial is the product of (x - a^i) for i from 0 to n-1. Its leading
+	 * coefficient is always 1 and is therefore omitted.
+	 * 
+	 * @param n
+	 *            the number of error correction codewords
+	 * @return the logarithms of the coefficients of the generator polynomial, from the
+	 *         coefficient of x^(n-1) down to the constant term
+	 */
+	private static int[] computeGenerator(int n) {
+		/*
+		 * Coefficients in normal form, index 0 being the constant term
+		 */
+		int[] poly = new int[n+1];
+		poly[0] = 1;
+		for(int i=0;i<n;i++) {
+			for(int j=i+1;j>0;j--) {
+				poly[j] = poly[j-1] ^ mul(poly[j], LOG_TABLE[i]);
 			}
-			return LOG_TABLE[p];
+			poly[0] = mul(poly[0], LOG_TABLE[i]);
 		}
-		
-		public String toString() {
-			if(p<0) {
-				return "0";
-			}
-			return "a^"+p;
+
+		int[] generator = new int[n];
+		for(int j=0;j<n;j++) {
+			generator[j] = ANTILOG_TABLE[poly[n-1-j]];
 		}
-		
+		return generator;
 	}
 
-	private final static GalloisNumber[] polynomialGenerator(int n) {
-		if(n == 1) {
-			GalloisNumber[] poly = {new GalloisNumber(0),new GalloisNumber(0)};
-			return poly;
-		}
-		GalloisNumber[] left = polynomialGenerator(n-1);
-		GalloisNumber[] right = {new GalloisNumber(n-1),new GalloisNumber(0)};
-		
-		GalloisNumber[] poly = new GalloisNumber[n+1];
-		poly[0] = right[0].mul(left[0]);
-		poly[n] = right[1];
-		
-		for(int i=1;i<n;i++) {
-			poly[i] = right[0].mul(left[i]).add(right[1].mul(left[i-1]));
+	/**
+	 * Get the logarithm of a non-zero element of GF(256)
+	 * @param value the element
+	 * @return the power of a equal to value, or -1 if value is 0
+	 */
+	static int log(int value) {
+		return ANTILOG_TABLE[value];
+	}
+
+	/**
+	 * Get a power of a in GF(256)
+	 * @param power the exponent, between 0 and 510 included
+	 * @return a^power
+	 */
+	static int exp(int power) {
+		return EXP_TABLE[power];
+	}
+
+	/**
+	 * Multiply two elements of GF(256)
+	 * @param a the first element
+	 * @param b the second element
+	 * @return the product of a and b
+	 */
+	static int mul(int a, int b) {
+		if(a == 0 || b == 0) {
+			return 0;
 		}
-		
-		return poly;
-		
-		
+		return EXP_TABLE[ANTILOG_TABLE[a] + ANTILOG_TABLE[b]];
 	}
 }
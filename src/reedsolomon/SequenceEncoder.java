@@ -0,0 +1,165 @@
+package reedsolomon;
+
+import java.util.Arrays;
+
+/**
+ * Error correction encoder for series of messages that differ only in a few bytes,
+ * e.g. serial numbers.
+ *
+ * Reed-Solomon encoding is linear: ECC(a xor b) = ECC(a) xor ECC(b). The encoder
+ * remembers the last message and its ECC, and for the next one only adds the
+ * contribution of the bytes that changed. The contribution of a byte v at position p is
+ * v times the ECC of the message having a single 1 at position p, which is precomputed
+ * for every position. Encoding then costs O(changed bytes * ECC length) instead of
+ * O(message length * ECC length).
+ *
+ * An instance keeps state between calls and must not be shared between threads.
+ */
+public final class SequenceEncoder {
+
+	private final int messageLength;
+	private final int eccLength;
+
+	/*
+	 * Logarithm of the ECC of the unit message at each position, -1 for a zero coefficient.
+	 * The coefficients of position p are at [p*eccLength, (p+1)*eccLength)
+	 */
+	private final int[] unitEcc;
+
+	private final int[] previousMessage;
+	private final int[] previousEcc;
+	private boolean hasPrevious = false;
+	private int changedBytes = 0;
+
+	/**
+	 * Create an encoder for messages of a given length
+	 *
+	 * @param messageLength
+	 *            the number of bytes of each message
+	 * @param eccLength
+	 *            the number of ECC to generate for each message
+	 */
+	public SequenceEncoder(int messageLength, int eccLength) {
+		this.messageLength = messageLength;
+		this.eccLength = eccLength;
+		this.unitEcc = unitEccTable(messageLength, eccLength);
+		this.previousMessage = new int[messageLength];
+		this.previousEcc = new int[eccLength];
+	}
+
+	/**
+	 * Generate the error correction codewords of a message, reusing the ones of the
+	 * previous message given to this encoder
+	 *
+	 * @param message
+	 *            the message, of the length given at construction
+	 * @param ecc
+	 *            the array where the ECC are written, of length at least the number of ECC
+	 */
+	public void encode(int[] message, int[] ecc) {
+		if(message.length != messageLength) {
+			throw new IllegalArgumentException("The message must have a length of "+messageLength);
+		}
+
+		if(!hasPrevious) {
+			ErrorCorrectionEncoding.encode(message, 0, messageLength, previousEcc, 0, eccLength);
+			for(int p=0;p<messageLength;p++) {
+				previousMessage[p] = message[p] & 0xFF;
+			}
+			changedBytes = messageLength;
+			hasPrevious = true;
+		} else {
+			changedBytes = 0;
+			for(int p=0;p<messageLength;p++) {
+				int value = message[p] & 0xFF;
+				int delta = value ^ previousMessage[p];
+				if(delta != 0) {
+					addContribution(p, delta);
+					previousMessage[p] = value;
+					++changedBytes;
+				}
+			}
+		}
+
+		System.arraycopy(previousEcc, 0, ecc, 0, eccLength);
+	}
+
+	/**
+	 * Generate the error correction codewords of a message, reusing the ones of the
+	 * previous message given to this encoder
+	 *
+	 * @param message
+	 *            the message, of the length given at construction
+	 * @return An array of ECC bytes for message
+	 */
+	public int[] encode(int[] message) {
+		int[] ecc = new int[eccLength];
+		encode(message, ecc);
+		return ecc;
+	}
+
+	/**
+	 * Forget the previous message, the next one will be fully encoded
+	 */
+	public void reset() {
+		hasPrevious = false;
+		Arrays.fill(previousMessage, 0);
+		Arrays.fill(previousEcc, 0);
+	}
+
+	/**
+	 * @return the number of bytes that differed between the last two messages, i.e. the
+	 *         number of contributions computed by the last call to encode
+	 */
+	public int getChangedBytes() {
+		return changedBytes;
+	}
+
+	/**
+	 * Add delta times the ECC of the unit message at position p to the current ECC
+	 */
+	private void addContribution(int p, int delta) {
+		int logDelta = ErrorCorrectionEncoding.log(delta);
+		int base = p*eccLength;
+		for(int j=0;j<eccLength;j++) {
+			int coeff = unitEcc[base+j];
+			if(coeff >= 0) {
+				previousEcc[j] ^= ErrorCorrectionEncoding.exp(logDelta + coeff);
+			}
+		}
+	}
+
+	/**
+	 * Compute the ECC of every unit message. The ECC of the unit at the last position is
+	 * the remainder of x^eccLength, and moving one position towards the start multiplies
+	 * the polynomial by x, which is one step of the shift register with a zero input.
+	 */
+	private static int[] unitEccTable(int messageLength, int eccLength) {
+		int[] generator = ErrorCorrectionEncoding.generator(eccLength);
+		int[] table = new int[messageLength*eccLength];
+		int[] remainder = new int[eccLength];
+
+		for(int j=0;j<eccLength;j++) {
+			remainder[j] = ErrorCorrectionEncoding.exp(generator[j]);
+		}
+
+		for(int p=messageLength-1;p>=0;p--) {
+			for(int j=0;j<eccLength;j++) {
+				table[p*eccLength+j] = remainder[j] == 0 ? -1 : ErrorCorrectionEncoding.log(remainder[j]);
+			}
+
+			if(eccLength > 0) {
+				int factor = remainder[0];
+				System.arraycopy(remainder, 1, remainder, 0, eccLength-1);
+				remainder[eccLength-1] = 0;
+				if(factor != 0) {
+					int logFactor = ErrorCorrectionEncoding.log(factor);
+					for(int j=0;j<eccLength;j++) {
+						remainder[j] ^= ErrorCorrectionEncoding.exp(logFactor + generator[j]);
+					}
+				}
+			}
+		}
+		return table;
+	}
+}
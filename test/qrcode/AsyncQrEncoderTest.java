@@ -0,0 +1,167 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncQrEncoderTest {
+
+	private final QrEncoder encoder = new QrEncoder();
+
+	@Test
+	void testEncodeFuture() throws Exception {
+		AsyncQrEncoder async = new AsyncQrEncoder(encoder);
+		QrCode code = async.encode("HELLO WORLD").get(10, TimeUnit.SECONDS);
+		assertArrayEquals(encoder.render("HELLO WORLD"), encoder.render(code));
+		CompletableFuture<QrCode> failed = new AsyncQrEncoder(encoder.withVersion(1)).encode("x".repeat(100));
+		ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof IllegalArgumentException);
+	}
+
+	@Test
+	void testPublisherHonoursDemand() {
+		List<String> inputs = List.of("A", "B", "C", "D", "E");
+		// the encodings run on the requesting thread, so the demand can be checked right away
+		Flow.Publisher<QrCode> publisher = new AsyncQrEncoder(encoder, Runnable::run).encodeAll(inputs);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber);
+		assertEquals(0, subscriber.codes.size());
+
+		subscriber.subscription.request(2);
+		assertEquals(2, subscriber.codes.size());
+		assertFalse(subscriber.completed);
+		subscriber.subscription.request(1);
+		assertEquals(3, subscriber.codes.size());
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertEquals(5, subscriber.codes.size());
+		assertTrue(subscriber.completed);
+		for (int i = 0; i < inputs.size(); i++) {
+			assertArrayEquals(encoder.render(inputs.get(i)), encoder.render(subscriber.codes.get(i)));
+		}
+	}
+
+	@Test
+	void testPublisherErrors() {
+		AsyncQrEncoder async = new AsyncQrEncoder(encoder.withVersion(1), Runnable::run);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		async.encodeAll(List.of("A", "x".repeat(100), "B")).subscribe(subscriber);
+		subscriber.subscription.request(3);
+		assertEquals(1, subscriber.codes.size());
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+
+		RecordingSubscriber invalid = new RecordingSubscriber();
+		async.encodeAll(List.of("A")).subscribe(invalid);
+		invalid.subscription.request(0);
+		assertTrue(invalid.error instanceof IllegalArgumentException);
+	}
+
+	@Test
+	void testPublisherSignalsErrors() {
+		Iterable<String> failing = () -> new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return true;
+			}
+
+			@Override
+			public String next() {
+				throw new StackOverflowError();
+			}
+		};
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		new AsyncQrEncoder(encoder, Runnable::run).encodeAll(failing).subscribe(subscriber);
+		subscriber.subscription.request(1);
+		assertTrue(subscriber.error instanceof StackOverflowError);
+		assertEquals(0, subscriber.codes.size());
+	}
+
+	@Test
+	void testPublisherSignalsIteratorErrors() {
+		Iterable<String> failing = () -> new Iterator<String>() {
+			private boolean first = true;
+
+			@Override
+			public boolean hasNext() {
+				if (first) {
+					return true;
+				}
+				throw new IllegalStateException("no more texts");
+			}
+
+			@Override
+			public String next() {
+				first = false;
+				return "first";
+			}
+		};
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		new AsyncQrEncoder(encoder, Runnable::run).encodeAll(failing).subscribe(subscriber);
+		subscriber.subscription.request(2);
+		assertTrue(subscriber.error instanceof IllegalStateException);
+		assertFalse(subscriber.completed);
+		assertEquals(1, subscriber.codes.size());
+	}
+
+	@Test
+	void testPublisherOnDefaultExecutor() throws Exception {
+		List<String> inputs = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			inputs.add("label " + i);
+		}
+		CountDownLatch done = new CountDownLatch(1);
+		RecordingSubscriber subscriber = new RecordingSubscriber() {
+			@Override
+			public void onNext(QrCode item) {
+				super.onNext(item);
+				subscription.request(1);
+			}
+
+			@Override
+			public void onComplete() {
+				super.onComplete();
+				done.countDown();
+			}
+		};
+		new AsyncQrEncoder(encoder).encodeAll(inputs).subscribe(subscriber);
+		subscriber.subscription.request(1);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(inputs.size(), subscriber.codes.size());
+	}
+
+	private static class RecordingSubscriber implements Flow.Subscriber<QrCode> {
+		final List<QrCode> codes = new ArrayList<>();
+		volatile Flow.Subscription subscription;
+		volatile boolean completed;
+		volatile Throwable error;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(QrCode item) {
+			codes.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+}
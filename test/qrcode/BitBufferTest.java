@@ -0,0 +1,49 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class BitBufferTest {
+
+	@Test
+	void testAppendAndRead() {
+		BitBuffer buffer = new BitBuffer();
+		buffer.append(0b0100, 4);
+		buffer.append(0xABC, 12);
+		buffer.append(1, 1);
+		assertEquals(17, buffer.getLength());
+		assertEquals(3, buffer.getCodewordCount());
+		assertArrayEquals(new int[] { 0x4A, 0xBC, 0x80 }, buffer.toCodewords());
+		assertEquals(0xABC, buffer.getBits(4, 12));
+		assertTrue(buffer.getBit(1));
+		assertFalse(buffer.getBit(0));
+		assertTrue(buffer.getBit(16));
+		assertThrows(IndexOutOfBoundsException.class, () -> buffer.getBit(17));
+	}
+
+	@Test
+	void testAppendCodewordsUnaligned() {
+		BitBuffer buffer = new BitBuffer();
+		buffer.append(0xF, 4);
+		buffer.appendCodewords(new int[] { 0x12, 0x34 }, 0, 2);
+		assertArrayEquals(new int[] { 0xF1, 0x23, 0x40 }, buffer.toCodewords());
+		boolean[] bits = buffer.toBooleanArray();
+		assertEquals(20, bits.length);
+		assertTrue(bits[3]);
+		assertFalse(bits[4]);
+	}
+
+	@Test
+	void testClearKeepsCapacity() {
+		BitBuffer buffer = new BitBuffer(16);
+		int[] codewords = buffer.codewords;
+		buffer.append(0xFFFF, 16);
+		buffer.clear();
+		assertEquals(0, buffer.getLength());
+		buffer.append(1, 1);
+		assertSame(codewords, buffer.codewords);
+		assertArrayEquals(new int[] { 0x80 }, buffer.toCodewords());
+	}
+
+}
@@ -6,6 +6,10 @@ import java.util.Arrays;
 
 import org.junit.jupiter.api.Test;
 
+import qrcode.QRCodeInfos.CorrectionLvl;
+import reedsolomon.ErrorCorrectionDecoder;
+import reedsolomon.ErrorCorrectionEncoding;
+
 class DataEncodingTest {
 
 	private final String message = "Programming is a skill best acquired by practice.";
@@ -78,4 +82,110 @@ class DataEncodingTest {
 		assertArrayEquals(binaryArray, res);
 	}
 
+	@Test
+	void testToBinaryArrayKeepsInput() {
+		int[] data = bybetAndError.clone();
+		DataEncoding.bytesToBinaryArray(data);
+		assertArrayEquals(bybetAndError, data);
+	}
+
+	@Test
+	void testWorkspaceEncoding() {
+		EncodingWorkspace workspace = new EncodingWorkspace();
+		BitBuffer res = DataEncoding.byteModeEncoding(message, 1, CorrectionLvl.L, workspace);
+		assertArrayEquals(binaryArray, res.toBooleanArray());
+		assertEquals(1, workspace.getVersion());
+		// the buffers are reused by the next encoding
+		BitBuffer next = SegmentEncoding.encode(message, CorrectionLvl.L, false, null, workspace);
+		assertSame(res, next);
+		assertArrayEquals(DataEncoding.encode(message, CorrectionLvl.L, false).getBits(), next.toBooleanArray());
+	}
+
+	@Test
+	void testAddInformationsVersion10() {
+		int[] res = DataEncoding.addInformations(new int[] { 0xAB, 0xCD }, 10);
+		assertArrayEquals(new int[] { 0x40, 0x00, 0x2A, 0xBC, 0xD0 }, res);
+		assertArrayEquals(byteCodeV1, DataEncoding.addInformations(Arrays.copyOfRange(isoCode, 0, 17), 9));
+	}
+
+	@Test
+	void testAddBlockErrorCorrection() {
+		// version 10 has 2 blocks of 68 data codewords followed by 2 blocks of 69, with 18 ECC each
+		int version = 10;
+		int[] data = new int[QRCodeInfos.getCodeWordsLength(version)];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (i * 37 + 11) & 0xFF;
+		}
+		int[] res = DataEncoding.addBlockErrorCorrection(data, version);
+		assertEquals(QRCodeInfos.getTotalCodeWordsLength(version), res.length);
+
+		int[][] blocks = { Arrays.copyOfRange(data, 0, 68), Arrays.copyOfRange(data, 68, 136),
+				Arrays.copyOfRange(data, 136, 205), Arrays.copyOfRange(data, 205, 274) };
+		for (int block = 0; block < 4; block++) {
+			for (int i = 0; i < blocks[block].length; i++) {
+				int index = i < 68 ? i * 4 + block : 68 * 4 + block - 2;
+				assertEquals(blocks[block][i], res[index]);
+			}
+			int[] ecc = ErrorCorrectionEncoding.encode(blocks[block], 18);
+			for (int i = 0; i < 18; i++) {
+				assertEquals(ecc[i], res[274 + i * 4 + block]);
+			}
+		}
+		assertArrayEquals(bybetAndError, DataEncoding.addBlockErrorCorrection(byteCodeV1, 1));
+	}
+
+	@Test
+	void testParallelBlockErrorCorrection() {
+		EncodingWorkspace sequential = new EncodingWorkspace();
+		EncodingWorkspace parallel = new EncodingWorkspace();
+		for (int version = DataEncoding.PARALLEL_ECC_VERSION - 1; version <= QRCodeInfos.MAX_VERSION; version += 7) {
+			for (CorrectionLvl level : CorrectionLvl.values()) {
+				int[] data = new int[QRCodeInfos.getCodeWordsLength(version, level)];
+				for (int i = 0; i < data.length; i++) {
+					data[i] = (i * 53 + version) & 0xFF;
+				}
+				BitBuffer buffer = BitBuffer.of(data);
+				int[] expected = DataEncoding.addBlockErrorCorrection(buffer, version, level, sequential).toCodewords();
+				assertArrayEquals(expected, DataEncoding.addBlockErrorCorrection(buffer, version, level, parallel, 1).toCodewords());
+				assertArrayEquals(expected, DataEncoding.addBlockErrorCorrection(data, version, level));
+			}
+		}
+	}
+
+	@Test
+	void testEncodeLevelQ() {
+		boolean[] res = DataEncoding.byteModeEncoding(message, 1, CorrectionLvl.Q);
+		assertEquals(26 * 8, res.length);
+		int[] codewords = new int[26];
+		for (int i = 0; i < res.length; i++) {
+			codewords[i / 8] = codewords[i / 8] << 1 | (res[i] ? 1 : 0);
+		}
+		assertEquals(0x40, codewords[0]);
+		assertEquals(0xB5, codewords[1]);
+		assertTrue(ErrorCorrectionDecoder.verify(codewords, 0, 26, 13));
+	}
+
+	@Test
+	void testEncodeSmallestVersion() {
+		EncodedData res = DataEncoding.encode(message, CorrectionLvl.L, false);
+		assertEquals(3, res.getVersion());
+		assertEquals(CorrectionLvl.L, res.getLevel());
+		assertEquals(QRCodeInfos.getTotalCodeWordsLength(3) * 8, res.getBits().length);
+
+		// 49 bytes leave no room for a higher level in version 3
+		assertEquals(CorrectionLvl.L, DataEncoding.encode(message, CorrectionLvl.L, true).getLevel());
+
+		// 20 bytes need version 2, which holds them up to level Q
+		res = DataEncoding.encode(message.substring(0, 20), CorrectionLvl.L, true);
+		assertEquals(2, res.getVersion());
+		assertEquals(CorrectionLvl.Q, res.getLevel());
+
+		res = DataEncoding.encode(message.substring(0, 17), CorrectionLvl.L, false);
+		assertEquals(1, res.getVersion());
+		assertArrayEquals(binaryArray, res.getBits());
+
+		assertEquals(1, DataEncoding.encode("").getVersion());
+		assertThrows(IllegalArgumentException.class, () -> DataEncoding.encode("x".repeat(2954)));
+	}
+
 }
@@ -0,0 +1,113 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import qrcode.EncodingPipeline.Stage;
+import qrcode.EncodingPipeline.StageStats;
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+class EncodingPipelineTest {
+
+	@Test
+	void testPipelineMatchesEncoder() throws Exception {
+		QrEncoder encoder = new QrEncoder().withLevel(CorrectionLvl.M).withScale(2).withQuietZone(4);
+		List<String> inputs = new ArrayList<>();
+		List<CompletableFuture<int[][]>> results = new ArrayList<>();
+		EncodingPipeline pipeline = new EncodingPipeline(encoder, new int[] { 1, 1, 2, 2 }, 4);
+		for (int i = 0; i < 200; i++) {
+			inputs.add("ITEM " + i + " " + "0123456789".repeat(i % 30));
+			results.add(pipeline.submit(inputs.get(i)));
+		}
+		pipeline.close();
+		for (int i = 0; i < inputs.size(); i++) {
+			assertArrayEquals(encoder.render(inputs.get(i)), results.get(i).get(10, TimeUnit.SECONDS));
+		}
+
+		List<StageStats> stats = pipeline.getStats();
+		assertEquals(4, stats.size());
+		for (StageStats stage : stats) {
+			assertEquals(inputs.size(), stage.getProcessed());
+			assertEquals(4, stage.getQueueCapacity());
+			assertTrue(stage.getUtilisation() >= 0 && stage.getUtilisation() <= 1);
+		}
+		assertEquals(Stage.PLACEMENT, stats.get(2).getStage());
+		assertEquals(2, stats.get(2).getThreads());
+		assertThrows(IllegalStateException.class, () -> pipeline.submit("A"));
+	}
+
+	@Test
+	void testPipelineErrors() throws Exception {
+		QrEncoder encoder = new QrEncoder().withVersion(1);
+		CompletableFuture<int[][]> failed;
+		CompletableFuture<int[][]> passed;
+		try (EncodingPipeline pipeline = new EncodingPipeline(encoder, new int[] { 1, 1, 1, 1 }, 1)) {
+			failed = pipeline.submit("x".repeat(100));
+			passed = pipeline.submit("A");
+		}
+		ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof IllegalArgumentException);
+		assertArrayEquals(encoder.render("A"), passed.get(10, TimeUnit.SECONDS));
+		assertThrows(IllegalArgumentException.class, () -> new EncodingPipeline(encoder, new int[] { 1, 1, 1 }, 1));
+	}
+
+	@Test
+	void testPipelineSurvivesErrors() throws Exception {
+		QrEncoder encoder = new QrEncoder();
+		// an Error rather than an exception, thrown while the first stage reads the text
+		CharSequence broken = new CharSequence() {
+			@Override
+			public int length() {
+				return 5;
+			}
+
+			@Override
+			public char charAt(int index) {
+				throw new StackOverflowError();
+			}
+
+			@Override
+			public CharSequence subSequence(int start, int end) {
+				throw new StackOverflowError();
+			}
+		};
+		EncodingPipeline pipeline = new EncodingPipeline(encoder, new int[] { 1, 1, 1, 1 }, 2);
+		CompletableFuture<int[][]> failed = pipeline.submit(broken);
+		CompletableFuture<int[][]> passed = pipeline.submit("A");
+		ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof StackOverflowError);
+		assertArrayEquals(encoder.render("A"), passed.get(10, TimeUnit.SECONDS));
+
+		// closing waits for the threads even when interrupted, then restores the interrupt
+		Thread.currentThread().interrupt();
+		pipeline.close();
+		assertTrue(Thread.interrupted());
+		for (StageStats stage : pipeline.getStats()) {
+			// the text that failed never left the first stage
+			assertEquals(stage.getStage() == Stage.SEGMENT ? 2 : 1, stage.getProcessed());
+		}
+	}
+
+	@Test
+	void testStoppedStageFailsItems() throws Exception {
+		EncodingPipeline pipeline = new EncodingPipeline(new QrEncoder(), new int[] { 1, 1, 1, 1 }, 2);
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("qrcode-placement-0")) {
+				thread.interrupt();
+				thread.join(10_000);
+			}
+		}
+		CompletableFuture<int[][]> result = pipeline.submit("A");
+		ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof IllegalStateException);
+		pipeline.close();
+	}
+
+}
@@ -0,0 +1,127 @@
+package qrcode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+public class ImageOutputBenchmark {
+
+	/*
+	 * Parameters
+	 */
+	private static final int SYMBOLS = 2_000;
+	private static final int ROUNDS = 10;
+	private static final int SCALE = 10;
+	private static final int QUIET_ZONE = 4;
+
+	/*
+	 * Lengths of the texts, versions 2 to 22 at level M
+	 */
+	private static final int[] TEXT_LENGTHS = { 20, 100, 400, 1000 };
+
+	public static void main(String[] args) throws IOException {
+		QrEncoder encoder = new QrEncoder().withScale(SCALE).withQuietZone(QUIET_ZONE);
+		for (int length : TEXT_LENGTHS) {
+			measure(encoder, length);
+		}
+	}
+
+	/**
+	 * Print the bytes per symbol and the symbols per second of the SVG and PNG writers for
+	 * texts of the given length
+	 */
+	private static void measure(QrEncoder encoder, int length) throws IOException {
+		QrCode[] codes = new QrCode[SYMBOLS];
+		for (int s = 0; s < SYMBOLS; s++) {
+			codes[s] = encoder.encode(text(s, length));
+		}
+		SvgWriter svg = new SvgWriter(encoder);
+		CountingWriter svgOut = new CountingWriter();
+		CountingStream pngOut = new CountingStream();
+
+		long svgNanos = Long.MAX_VALUE;
+		long pngNanos = Long.MAX_VALUE;
+		try (PngWriter png = new PngWriter(encoder)) {
+			for (int round = 0; round < ROUNDS; round++) {
+				svgOut.count = 0;
+				long start = System.nanoTime();
+				for (QrCode code : codes) {
+					svg.write(code, svgOut);
+				}
+				svgNanos = Math.min(svgNanos, System.nanoTime() - start);
+
+				pngOut.count = 0;
+				start = System.nanoTime();
+				for (QrCode code : codes) {
+					png.write(code, pngOut);
+				}
+				pngNanos = Math.min(pngNanos, System.nanoTime() - start);
+			}
+		}
+
+		System.out.printf("version %2d   SVG: %,7d B/symbol %,10.0f symbols/s   PNG x%d: %,7d B/symbol %,10.0f symbols/s%n",
+				codes[0].getVersion(), svgOut.count / SYMBOLS, perSecond(svgNanos), SCALE, pngOut.count / SYMBOLS, perSecond(pngNanos));
+	}
+
+	/**
+	 * A text of the given length with a counter, so that the symbols differ
+	 */
+	private static String text(int counter, int length) {
+		StringBuilder text = new StringBuilder(length);
+		text.append(counter).append(':');
+		while (text.length() < length) {
+			text.append((char) ('a' + text.length() * 7 % 26));
+		}
+		return text.toString();
+	}
+
+	private static double perSecond(long nanos) {
+		return SYMBOLS * 1e9 / nanos;
+	}
+
+	/*
+	 * Destinations counting the bytes written and discarding them
+	 */
+	private static final class CountingWriter extends Writer {
+		long count;
+
+		@Override
+		public Writer append(char c) {
+			++count;
+			return this;
+		}
+
+		@Override
+		public Writer append(CharSequence text) {
+			count += text.length();
+			return this;
+		}
+
+		@Override
+		public void write(char[] chars, int offset, int length) {
+			count += length;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static final class CountingStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			++count;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			count += length;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+class MatrixConstructionTest03 {
+
+	@Test
+	void testConstructSymbol() {
+		BitMatrix symbol = MatrixConstruction.constructSymbol(4, 5);
+		int[][] matrix = MatrixConstruction.constructMatrix(4, 5);
+		for (int col = 0; col < matrix.length; col++) {
+			for (int row = 0; row < matrix.length; row++) {
+				assertEquals(matrix[col][row] != 0, symbol.isReserved(col, row));
+				assertEquals(matrix[col][row] == MatrixConstruction.B, symbol.isDark(col, row));
+			}
+		}
+	}
+
+	@Test
+	void testConstructSymbolReuse() {
+		BitMatrix symbol = MatrixConstruction.constructSymbol(2, 3);
+		symbol.setDark(10, 10, true);
+		MatrixConstruction.constructSymbol(2, 3, symbol);
+		assertFalse(symbol.isDark(10, 10));
+		assertTrue(Arrays.deepEquals(MatrixConstruction.constructSymbol(2, 3).toARGB(), symbol.toARGB()));
+	}
+
+	@Test
+	void testDataRoundTrip() {
+		Random random = new Random(8);
+		for (int version = 1; version <= 4; version++) {
+			for (int mask = 0; mask < 8; mask++) {
+				boolean[] data = new boolean[QRCodeInfos.getCodeWordsLength(version) * 8];
+				for (int i = 0; i < data.length; i++) {
+					data[i] = random.nextBoolean();
+				}
+				BitMatrix symbol = MatrixConstruction.constructSymbol(version, mask);
+				MatrixConstruction.addDataInformation(symbol, version, data, mask);
+
+				boolean[] read = MatrixConstruction.readDataInformation(symbol, version, mask);
+				assertArrayEquals(data, Arrays.copyOf(read, data.length));
+				for (int i = data.length; i < read.length; i++) {
+					assertFalse(read[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testEvaluateWhiteMatrix() {
+		int[][] matrix = new int[21][21];
+		for (int[] column : matrix) {
+			Arrays.fill(column, MatrixConstruction.W);
+		}
+		// 42 runs of 21 modules, 400 blocks and only light modules
+		assertEquals(42 * 19 + 400 * 3 + 100, MatrixConstruction.evaluate(matrix));
+		assertEquals(42 * 19 + 400 * 3 + 100, MatrixConstruction.evaluate(BitMatrix.fromARGB(matrix)));
+	}
+
+	@Test
+	void testEvaluateFinderPattern() {
+		int[][] matrix = new int[21][21];
+		for (int[] column : matrix) {
+			Arrays.fill(column, MatrixConstruction.W);
+		}
+		int[] dark = { 4, 6, 7, 8, 10 };
+		for (int col : dark) {
+			matrix[col][0] = MatrixConstruction.B;
+		}
+		int whiteScore = 42 * 19 + 400 * 3 + 100;
+		// both orientations match in the first row. Its run of 21 becomes a run of 10, five
+		// columns get a run of 20, 8 blocks are broken and the dark ratio improves by a step
+		int expected = whiteScore + 2 * 40 - 19 + 8 - 5 - 8 * 3 - 10;
+		assertEquals(expected, MatrixConstruction.evaluate(matrix));
+		assertEquals(expected, MatrixConstruction.evaluate(BitMatrix.fromARGB(matrix)));
+	}
+
+	@Test
+	void testEvaluatePackedMatchesReference() {
+		Random random = new Random(10);
+		for (int round = 0; round < 200; round++) {
+			int size = 21 + 4 * random.nextInt(40);
+			BitMatrix symbol = new BitMatrix(size);
+			double density = random.nextDouble();
+			for (int col = 0; col < size; col++) {
+				for (int row = 0; row < size; row++) {
+					symbol.setDark(col, row, random.nextDouble() < density);
+				}
+			}
+			assertEquals(MatrixConstruction.evaluate(symbol.toARGB()), MatrixConstruction.evaluate(symbol));
+		}
+	}
+
+	@Test
+	void testMasksFollowTheStandard() {
+		// ISO/IEC 18004 table 10, with i the row and j the column
+		assertTrue(MatrixConstruction.isMasked(2, 0, 4));
+		assertFalse(MatrixConstruction.isMasked(0, 2, 4));
+		assertTrue(MatrixConstruction.isMasked(3, 2, 4));
+		assertFalse(MatrixConstruction.isMasked(1, 1, 7));
+		assertTrue(MatrixConstruction.isMasked(3, 1, 7));
+		assertTrue(MatrixConstruction.isMasked(2, 4, 7));
+		for (int j = 0; j < 21; j++) {
+			for (int i = 0; i < 21; i++) {
+				assertEquals((i / 2 + j / 3) % 2 == 0, MatrixConstruction.isMasked(j, i, 4));
+				assertEquals(((i + j) % 2 + (i * j) % 3) % 2 == 0, MatrixConstruction.isMasked(j, i, 7));
+			}
+		}
+	}
+
+	@Test
+	void testSelectMask() {
+		Random random = new Random(11);
+		for (int version = 1; version <= 4; version++) {
+			boolean[] data = new boolean[QRCodeInfos.getMaxInputLength(version) * 8];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = random.nextBoolean();
+			}
+			int[] expected = new int[8];
+			int best = 0;
+			for (int mask = 0; mask < 8; mask++) {
+				expected[mask] = MatrixConstruction.evaluate(MatrixConstruction.renderQRCodeMatrix(version, data, mask));
+				if (expected[mask] < expected[best]) {
+					best = mask;
+				}
+			}
+			MaskSelection sequential = MatrixConstruction.selectMask(version, data, Integer.MAX_VALUE);
+			MaskSelection parallel = MatrixConstruction.selectMask(version, data, 1);
+			assertArrayEquals(expected, sequential.getScores());
+			assertArrayEquals(expected, parallel.getScores());
+			assertEquals(best, sequential.getMask());
+			assertEquals(best, parallel.getMask());
+			assertEquals(best, MatrixConstruction.findBestMasking(version, data));
+			assertTrue(Arrays.deepEquals(MatrixConstruction.renderQRCodeMatrix(version, data, best),
+					parallel.getSymbol().toARGB()));
+		}
+	}
+
+	@Test
+	void testSelectMaskPruned() {
+		Random random = new Random(12);
+		for (int round = 0; round < 50; round++) {
+			int version = 1 + random.nextInt(4);
+			boolean[] data = new boolean[random.nextInt(QRCodeInfos.getMaxInputLength(version) * 8)];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = random.nextBoolean();
+			}
+			MaskSelection full = MatrixConstruction.selectMask(version, data);
+			int bestScore = full.getScore(full.getMask());
+			for (boolean orderByBalance : new boolean[] { false, true }) {
+				MaskSelection pruned = MatrixConstruction.selectMaskPruned(version, data, orderByBalance);
+				assertEquals(full.getMask(), pruned.getMask());
+				assertEquals(bestScore, pruned.getScore(pruned.getMask()));
+				int exact = 0;
+				for (int mask = 0; mask < 8; mask++) {
+					if (pruned.getScore(mask) == full.getScore(mask)) {
+						++exact;
+					} else {
+						assertTrue(pruned.getScore(mask) >= bestScore);
+						assertTrue(pruned.getScore(mask) < full.getScore(mask));
+					}
+				}
+				assertTrue(exact >= 8 - pruned.getPrunedCount());
+				assertTrue(Arrays.deepEquals(full.getSymbol().toARGB(), pruned.getSymbol().toARGB()));
+			}
+		}
+	}
+
+	@Test
+	void testEvaluateBound() {
+		Random random = new Random(13);
+		BitMatrix symbol = new BitMatrix(33);
+		for (int col = 0; col < 33; col++) {
+			for (int row = 0; row < 33; row++) {
+				symbol.setDark(col, row, random.nextBoolean());
+			}
+		}
+		int score = MatrixConstruction.evaluate(symbol);
+		assertEquals(score, MatrixConstruction.evaluate(symbol, score));
+		assertEquals(score, MatrixConstruction.evaluate(symbol, Integer.MAX_VALUE));
+		int partial = MatrixConstruction.evaluate(symbol, 0);
+		assertTrue(partial > 0 && partial <= score);
+	}
+
+	@Test
+	void testVersionInformation() {
+		int size = QRCodeInfos.getMatrixSize(7);
+		int[][] matrix = new int[size][size];
+		MatrixConstruction.addVersionInformation(matrix, 7);
+		BitMatrix symbol = new BitMatrix(size);
+		MatrixConstruction.addVersionInformation(symbol, 7);
+		assertTrue(Arrays.deepEquals(BitMatrix.fromARGB(matrix).toARGB(), symbol.toARGB()));
+
+		int version = QRCodeInfos.getVersionWord(7);
+		for (int i = 0; i < 18; i++) {
+			int color = ((version >> i) & 1) != 0 ? MatrixConstruction.B : MatrixConstruction.W;
+			assertEquals(color, matrix[size - 11 + i % 3][i / 3]);
+			assertEquals(color, matrix[i / 3][size - 11 + i % 3]);
+			assertTrue(symbol.isReserved(size - 11 + i % 3, i / 3));
+		}
+
+		int[][] small = new int[21][21];
+		MatrixConstruction.addVersionInformation(small, 6);
+		assertTrue(Arrays.deepEquals(new int[21][21], small));
+	}
+
+	@Test
+	void testAlignmentPatterns() {
+		int version = 7;
+		BitMatrix symbol = new BitMatrix(QRCodeInfos.getMatrixSize(version));
+		MatrixConstruction.addAlignmentPatterns(symbol, version);
+		int[] positions = QRCodeInfos.getAlignmentPositions(version);
+		int patterns = 0;
+		for (int col : positions) {
+			for (int row : positions) {
+				if (symbol.isReserved(col, row)) {
+					++patterns;
+					assertTrue(symbol.isDark(col, row));
+					assertFalse(symbol.isDark(col + 1, row));
+					assertTrue(symbol.isDark(col + 2, row - 2));
+				}
+			}
+		}
+		assertEquals(6, patterns);
+		assertFalse(symbol.isReserved(6, 6));
+	}
+
+	@Test
+	void testLevelFormatInformation() {
+		for (CorrectionLvl level : CorrectionLvl.values()) {
+			BitMatrix symbol = MatrixConstruction.constructSymbol(2, level, 5);
+			int format = QRCodeInfos.getFormatWord(level, 5);
+			for (int i = 0; i <= 5; i++) {
+				assertEquals(((format >> (14 - i)) & 1) != 0, symbol.isDark(i, 8));
+			}
+			int[][] matrix = MatrixConstruction.constructMatrix(2, level, 5);
+			assertTrue(Arrays.deepEquals(BitMatrix.fromARGB(matrix).toARGB(), symbol.toARGB()));
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+class PngWriterTest {
+
+	@Test
+	void testImageMatchesRender() throws IOException {
+		QrEncoder encoder = new QrEncoder().withScale(3).withQuietZone(4);
+		QrCode code = encoder.encode("HELLO WORLD");
+		byte[] png;
+		try (PngWriter writer = new PngWriter(encoder)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			writer.write(code, out);
+			png = out.toByteArray();
+		}
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+		int[][] expected = encoder.render(code);
+		assertEquals(expected.length, image.getWidth());
+		assertEquals(expected.length, image.getHeight());
+		for (int x = 0; x < expected.length; x++) {
+			for (int y = 0; y < expected.length; y++) {
+				assertEquals(expected[x][y], image.getRGB(x, y));
+			}
+		}
+	}
+
+	@Test
+	void testWidthNotMultipleOfEight() throws IOException {
+		// 21 modules and no quiet zone: the last byte of each scanline is partly padding
+		QrEncoder encoder = new QrEncoder().withVersion(1).withLevel(CorrectionLvl.L).withScale(1).withQuietZone(0);
+		QrCode code = encoder.encode("A");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (PngWriter writer = new PngWriter(encoder)) {
+			writer.write(code, out);
+		}
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+		int[][] expected = encoder.render(code);
+		for (int x = 0; x < 21; x++) {
+			for (int y = 0; y < 21; y++) {
+				assertEquals(expected[x][y], image.getRGB(x, y));
+			}
+		}
+	}
+
+	@Test
+	void testWriterIsReusedAcrossSinks() throws IOException {
+		QrEncoder encoder = new QrEncoder();
+		try (PngWriter writer = new PngWriter(8, 4)) {
+			ByteArrayOutputStream large = new ByteArrayOutputStream();
+			writer.write(encoder.encode("x".repeat(1500)), large);
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			ByteArrayOutputStream channel = new ByteArrayOutputStream();
+			QrCode code = encoder.encode("reused writer");
+			writer.write(code, stream);
+			writer.write(code, Channels.newChannel(channel));
+			assertArrayEquals(stream.toByteArray(), channel.toByteArray());
+			assertNotNull(ImageIO.read(new ByteArrayInputStream(large.toByteArray())));
+		}
+	}
+
+	@Test
+	void testSmallerThanArgbImage() throws IOException {
+		QrEncoder encoder = new QrEncoder().withScale(10);
+		QrCode code = encoder.encode("https://www.epfl.ch/en/");
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		try (PngWriter writer = new PngWriter(encoder)) {
+			writer.write(code, png);
+		}
+		int[][] matrix = encoder.render(code);
+		BufferedImage argb = new BufferedImage(matrix.length, matrix.length, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < matrix.length; x++) {
+			for (int y = 0; y < matrix.length; y++) {
+				argb.setRGB(x, y, matrix[x][y]);
+			}
+		}
+		ByteArrayOutputStream imageIo = new ByteArrayOutputStream();
+		ImageIO.write(argb, "png", imageIo);
+		assertTrue(png.size() * 4 < imageIo.size(), png.size() + " bytes against " + imageIo.size());
+	}
+
+	@Test
+	void testInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new PngWriter(0, 4));
+		assertThrows(IllegalArgumentException.class, () -> new PngWriter(1, -1));
+	}
+}
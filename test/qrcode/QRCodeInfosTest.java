@@ -0,0 +1,115 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+class QRCodeInfosTest {
+
+	// format information of the levels L, M, Q and H with mask 0 to 7, from ISO/IEC 18004 table C.1
+	private final int[][] formatWords = {
+			{ 0x77C4, 0x72F3, 0x7DAA, 0x789D, 0x662F, 0x6318, 0x6C41, 0x6976 },
+			{ 0x5412, 0x5125, 0x5E7C, 0x5B4B, 0x45F9, 0x40CE, 0x4F97, 0x4AA0 },
+			{ 0x355F, 0x3068, 0x3F31, 0x3A06, 0x24B4, 0x2183, 0x2EDA, 0x2BED },
+			{ 0x1689, 0x13BE, 0x1CE7, 0x19D0, 0x0762, 0x0255, 0x0D0C, 0x083B } };
+
+	@Test
+	void testFormatWords() {
+		for (CorrectionLvl level : CorrectionLvl.values()) {
+			for (int mask = 0; mask < 8; mask++) {
+				assertEquals(formatWords[level.ordinal()][mask], QRCodeInfos.getFormatWord(level, mask));
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> QRCodeInfos.getFormatWord(CorrectionLvl.L, 8));
+	}
+
+	@Test
+	void testFormatSequence() {
+		for (int mask = 0; mask < 8; mask++) {
+			boolean[] sequence = QRCodeInfos.getFormatSequence(mask);
+			assertEquals(15, sequence.length);
+			for (int i = 0; i < sequence.length; i++) {
+				assertEquals(((formatWords[0][mask] >> (14 - i)) & 1) != 0, sequence[i]);
+			}
+		}
+	}
+
+	@Test
+	void testVersionWords() {
+		assertEquals(0x07C94, QRCodeInfos.getVersionWord(7));
+		assertEquals(0x0C762, QRCodeInfos.getVersionWord(12));
+		assertEquals(0x1F250, QRCodeInfos.getVersionWord(31));
+		assertEquals(0x28C69, QRCodeInfos.getVersionWord(40));
+		assertThrows(IllegalArgumentException.class, () -> QRCodeInfos.getVersionWord(6));
+	}
+
+	@Test
+	void testCapacity() {
+		int[] versions = { 1, 2, 3, 4, 5, 10, 20, 30, 40 };
+		int[] dataCodeWords = { 19, 34, 55, 80, 108, 274, 861, 1735, 2956 };
+		for (int i = 0; i < versions.length; i++) {
+			assertEquals(dataCodeWords[i], QRCodeInfos.getCodeWordsLength(versions[i]));
+		}
+		assertEquals(17, QRCodeInfos.getMaxInputLength(1));
+		assertEquals(78, QRCodeInfos.getMaxInputLength(4));
+		assertEquals(271, QRCodeInfos.getMaxInputLength(10));
+		assertEquals(7, QRCodeInfos.getECCLength(1));
+		assertEquals(25, QRCodeInfos.getBlockCount(40));
+		assertEquals(30, QRCodeInfos.getBlockECCLength(40));
+		assertEquals(3706, QRCodeInfos.getTotalCodeWordsLength(40));
+		assertThrows(IllegalArgumentException.class, () -> QRCodeInfos.getCodeWordsLength(41));
+	}
+
+	@Test
+	void testAlignmentPositions() {
+		assertArrayEquals(new int[0], QRCodeInfos.getAlignmentPositions(1));
+		assertArrayEquals(new int[] { 6, 18 }, QRCodeInfos.getAlignmentPositions(2));
+		assertArrayEquals(new int[] { 6, 22, 38 }, QRCodeInfos.getAlignmentPositions(7));
+		assertArrayEquals(new int[] { 6, 34, 60, 86, 112, 138 }, QRCodeInfos.getAlignmentPositions(32));
+		assertArrayEquals(new int[] { 6, 30, 58, 86, 114, 142, 170 }, QRCodeInfos.getAlignmentPositions(40));
+	}
+
+	@Test
+	void testLevelCapacity() {
+		int[] version1 = { 19, 16, 13, 9 };
+		int[] version40 = { 2956, 2334, 1666, 1276 };
+		for (CorrectionLvl level : CorrectionLvl.values()) {
+			assertEquals(version1[level.ordinal()], QRCodeInfos.getCodeWordsLength(1, level));
+			assertEquals(version40[level.ordinal()], QRCodeInfos.getCodeWordsLength(40, level));
+			assertEquals(3706, QRCodeInfos.getCodeWordsLength(40, level) + QRCodeInfos.getECCLength(40, level));
+		}
+		assertEquals(11, QRCodeInfos.getMaxInputLength(1, CorrectionLvl.Q));
+		assertEquals(68, QRCodeInfos.getBlockCount(40, CorrectionLvl.Q));
+		assertEquals(22, QRCodeInfos.getBlockECCLength(3, CorrectionLvl.H));
+		assertEquals(QRCodeInfos.getECCLength(4), QRCodeInfos.getECCLength(4, CorrectionLvl.L));
+	}
+
+	@Test
+	void testLevelFormatSequence() {
+		boolean[] sequence = QRCodeInfos.getFormatSequence(CorrectionLvl.Q, 3);
+		for (int i = 0; i < sequence.length; i++) {
+			assertEquals(((formatWords[2][3] >> (14 - i)) & 1) != 0, sequence[i]);
+		}
+	}
+
+	@Test
+	void testMinimumVersion() {
+		for (CorrectionLvl level : CorrectionLvl.values()) {
+			for (int version = 1; version <= 40; version++) {
+				int capacity = QRCodeInfos.getMaxInputLength(version, level);
+				assertTrue(QRCodeInfos.getMinimumVersion(capacity, level) <= version);
+				if (version < 40) {
+					assertEquals(version + 1, QRCodeInfos.getMinimumVersion(capacity + 1, level));
+				}
+			}
+			assertEquals(1, QRCodeInfos.getMinimumVersion(0, level));
+		}
+		assertEquals(-1, QRCodeInfos.getMinimumVersion(2954, CorrectionLvl.L));
+		assertEquals(40, QRCodeInfos.getMinimumVersion(2953, CorrectionLvl.L));
+		// 256 bytes need the 16 bits count of version 10, even if version 9 could hold them
+		assertEquals(10, QRCodeInfos.getMinimumVersion(256, CorrectionLvl.L));
+	}
+
+}
@@ -0,0 +1,143 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+
+class QrEncoderTest {
+
+	private final String message = "Programming is a skill best acquired by practice.";
+
+	@Test
+	void testFixedMask() {
+		QrCode code = new QrEncoder().withMask(0).encode(message);
+		EncodedData data = DataEncoding.encode(message, CorrectionLvl.L, true);
+		int[][] expected = MatrixConstruction.renderQRCodeMatrix(data.getVersion(), data.getLevel(), data.getBits(), 0);
+		assertEquals(data.getVersion(), code.getVersion());
+		assertEquals(data.getLevel(), code.getLevel());
+		assertEquals(0, code.getMask());
+		assertArrayEquals(expected, code.toBitMatrix().toARGB());
+	}
+
+	@Test
+	void testAutomaticMask() {
+		QrCode code = new QrEncoder().withLevel(CorrectionLvl.M).withBoostLevel(false).encode(message);
+		EncodedData data = DataEncoding.encode(message, CorrectionLvl.M, false);
+		MaskSelection selection = MatrixConstruction.selectMask(data.getVersion(), CorrectionLvl.M, data.getBits());
+		assertEquals(CorrectionLvl.M, code.getLevel());
+		assertEquals(selection.getMask(), code.getMask());
+		assertArrayEquals(selection.getSymbol().toARGB(), code.toBitMatrix().toARGB());
+	}
+
+	@Test
+	void testFixedVersion() {
+		QrEncoder encoder = new QrEncoder().withVersion(10).withBoostLevel(false);
+		QrCode code = encoder.encode(message);
+		assertEquals(10, code.getVersion());
+		assertEquals(CorrectionLvl.L, code.getLevel());
+		assertEquals(QRCodeInfos.getMatrixSize(10), code.getSize());
+		assertEquals(CorrectionLvl.H, encoder.withBoostLevel(true).encode(message).getLevel());
+		assertThrows(IllegalArgumentException.class, () -> new QrEncoder().withVersion(1).encode(message));
+	}
+
+	@Test
+	void testSettings() {
+		QrEncoder encoder = new QrEncoder();
+		QrEncoder configured = encoder.withVersion(3).withMask(5).withCharset(StandardCharsets.UTF_8).withScale(2).withQuietZone(4);
+		assertEquals(QrEncoder.AUTO, encoder.getVersion());
+		assertEquals(QrEncoder.AUTO, encoder.getMask());
+		assertNull(encoder.getCharset());
+		assertEquals(3, configured.getVersion());
+		assertEquals(5, configured.getMask());
+		assertEquals(StandardCharsets.UTF_8, configured.getCharset());
+		assertThrows(IllegalArgumentException.class, () -> encoder.withVersion(41));
+		assertThrows(IllegalArgumentException.class, () -> encoder.withMask(8));
+		assertThrows(IllegalArgumentException.class, () -> encoder.withCharset(StandardCharsets.UTF_16));
+		assertThrows(IllegalArgumentException.class, () -> encoder.withScale(0));
+	}
+
+	@Test
+	void testRender() {
+		QrEncoder encoder = new QrEncoder().withScale(3).withQuietZone(4);
+		QrCode code = encoder.encode(message);
+		int[][] image = encoder.render(code);
+		assertEquals((code.getSize() + 8) * 3, image.length);
+		for (int col = 0; col < code.getSize(); col++) {
+			for (int row = 0; row < code.getSize(); row++) {
+				int color = code.isDark(col, row) ? MatrixConstruction.B : MatrixConstruction.W;
+				assertEquals(color, image[(col + 4) * 3][(row + 4) * 3 + 2]);
+			}
+		}
+		assertEquals(MatrixConstruction.W, image[0][0]);
+	}
+
+	@Test
+	void testBatchKeepsOrder() {
+		QrEncoder encoder = new QrEncoder();
+		List<String> inputs = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			// lengths spread over many versions and levels
+			inputs.add("label " + i + " " + message.repeat(i % 7));
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		BatchResult result;
+		try {
+			result = encoder.encodeBatch(inputs, pool);
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(inputs.size(), result.getCount());
+		assertTrue(result.getGroupCount() > 1);
+		assertTrue(result.getThroughput() > 0);
+		for (int i = 0; i < inputs.size(); i++) {
+			QrCode single = encoder.encode(inputs.get(i));
+			QrCode batched = result.getCodes().get(i);
+			assertEquals(single.getVersion(), batched.getVersion());
+			assertEquals(single.getLevel(), batched.getLevel());
+			assertEquals(single.getMask(), batched.getMask());
+			assertArrayEquals(encoder.render(single), encoder.render(batched));
+		}
+	}
+
+	@Test
+	void testBatchStream() {
+		BatchResult result = new QrEncoder().withMask(2).encodeBatch(Stream.of("A", "B", "C"));
+		assertEquals(3, result.getCount());
+		assertEquals(1, result.getGroupCount());
+		assertEquals(2, result.getCodes().get(1).getMask());
+		assertThrows(IllegalArgumentException.class, () -> new QrEncoder().withVersion(1).encodeBatch(List.of("A", message)));
+	}
+
+	@Test
+	void testConcurrentEncoding() throws Exception {
+		QrEncoder encoder = new QrEncoder().withLevel(CorrectionLvl.Q);
+		List<String> inputs = new ArrayList<>();
+		for (int i = 0; i < 64; i++) {
+			inputs.add(message.substring(i % message.length()) + i);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<QrCode>> futures = new ArrayList<>();
+			for (String input : inputs) {
+				futures.add(executor.submit(() -> encoder.encode(input)));
+			}
+			for (int i = 0; i < inputs.size(); i++) {
+				assertArrayEquals(encoder.render(inputs.get(i)), encoder.render(futures.get(i).get()));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
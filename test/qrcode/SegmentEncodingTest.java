@@ -0,0 +1,96 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import qrcode.QRCodeInfos.CorrectionLvl;
+import qrcode.QRCodeInfos.Mode;
+
+class SegmentEncodingTest {
+
+	@Test
+	void testNumeric() {
+		// ISO/IEC 18004 example: 4 + 10 + 10 + 10 + 7 bits
+		assertEquals(41, SegmentEncoding.optimalLength("01234567", 1));
+		int[] codewords = SegmentEncoding.dataCodewords("01234567", 1, CorrectionLvl.M);
+		assertEquals(16, codewords.length);
+		// 0001 0000001000 0000001100 0101011001 1000011 0000 then padding
+		int[] expected = { 0x10, 0x20, 0x0C, 0x56, 0x61, 0x80, 236, 17, 236, 17, 236, 17, 236, 17, 236, 17 };
+		assertArrayEquals(expected, codewords);
+	}
+
+	@Test
+	void testAlphanumeric() {
+		// ISO/IEC 18004 example: 4 + 9 + 11 + 11 + 6 bits
+		assertEquals(41, SegmentEncoding.optimalLength("AC-42", 1));
+		for (Mode mode : SegmentEncoding.optimalModes("AC-42", 1)) {
+			assertEquals(Mode.ALPHANUMERIC, mode);
+		}
+	}
+
+	@Test
+	void testKanji() {
+		String kanji = "\u65E5\u672C\u8A9E";
+		assertEquals(4 + 8 + 3 * 13, SegmentEncoding.optimalLength(kanji, 1));
+		// ISO/IEC 18004 example: the Shift JIS code 0x935F is encoded as 0xD9F
+		// 1000 00000001 0110110011111 0000
+		int[] codewords = SegmentEncoding.dataCodewords("\u70B9", 1, CorrectionLvl.H);
+		assertEquals(0x80, codewords[0]);
+		assertEquals(0x16, codewords[1]);
+		assertEquals(0xCF, codewords[2]);
+		assertEquals(0x80, codewords[3]);
+	}
+
+	@Test
+	void testMixedSegments() {
+		String input = "Tracking 123456789012345678901234 ABC";
+		Mode[] modes = SegmentEncoding.optimalModes(input, 1);
+		assertEquals(Mode.BYTE, modes[0]);
+		assertEquals(Mode.NUMERIC, modes[15]);
+		int bytes = 4 + 8 + input.length() * 8;
+		assertTrue(SegmentEncoding.optimalLength(input, 1) < bytes);
+	}
+
+	@Test
+	void testEncodeChoosesSmallerVersion() {
+		String digits = "12345678901234567890123456789012345678901234567890";
+		EncodedData res = SegmentEncoding.encode(digits, CorrectionLvl.L, false);
+		// 50 digits need 181 bits, which fit in version 2 but 50 bytes would need version 3
+		assertEquals(2, res.getVersion());
+		assertEquals(QRCodeInfos.getTotalCodeWordsLength(2) * 8, res.getBits().length);
+		// an unpaired surrogate has no encoding in any charset
+		assertThrows(IllegalArgumentException.class, () -> SegmentEncoding.encode("\uD800", CorrectionLvl.L, false));
+	}
+
+	@Test
+	void testUtf8Eci() {
+		// the emoji is neither in ISO-8859-1 nor in Shift JIS
+		String input = "a\uD83D\uDE00";
+		// ECI 26 header, byte mode header and the 5 bytes 61 F0 9F 98 80
+		assertEquals(12 + 12 + 5 * 8, SegmentEncoding.optimalLength(input, 1));
+		int[] codewords = SegmentEncoding.dataCodewords(input, 1, CorrectionLvl.L);
+		// 0111 00011010 0100 00000101 then the bytes and the terminator
+		int[] expected = { 0x71, 0xA4, 0x05, 0x61, 0xF0, 0x9F, 0x98, 0x80, 0x00, 236, 17 };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], codewords[i]);
+		}
+		assertEquals(-1, SegmentEncoding.optimalLength(input, 1, StandardCharsets.ISO_8859_1));
+		assertThrows(IllegalArgumentException.class, () -> SegmentEncoding.encode(input, CorrectionLvl.L, false, StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	void testUtf8Charset() {
+		// no ECI header for ASCII, Kanji mode is not used in UTF-8
+		assertEquals(SegmentEncoding.optimalLength("ABC123", 1), SegmentEncoding.optimalLength("ABC123", 1, StandardCharsets.UTF_8));
+		assertEquals(12 + 12 + 2 * 8, SegmentEncoding.optimalLength("\u00E9", 1, StandardCharsets.UTF_8));
+		assertEquals(12 + 12 + 3 * 8, SegmentEncoding.optimalLength("\u70B9", 1, StandardCharsets.UTF_8));
+		for (Mode mode : SegmentEncoding.optimalModes("\u70B9\u00E9", 1, StandardCharsets.UTF_8)) {
+			assertEquals(Mode.BYTE, mode);
+		}
+		assertThrows(IllegalArgumentException.class, () -> SegmentEncoding.optimalLength("A", 1, StandardCharsets.UTF_16));
+	}
+
+}
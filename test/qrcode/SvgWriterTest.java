@@ -0,0 +1,90 @@
+package qrcode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class SvgWriterTest {
+
+	private static final Pattern RUN = Pattern.compile("m(-?\\d+) (-?\\d+)h(\\d+)");
+
+	@Test
+	void testPathCoversDarkModules() throws IOException {
+		QrEncoder encoder = new QrEncoder().withQuietZone(4);
+		QrCode code = encoder.encode("https://www.epfl.ch/en/");
+		StringBuilder svg = new StringBuilder();
+		new SvgWriter(encoder).write(code, svg);
+
+		int modules = code.getSize() + 8;
+		assertTrue(svg.indexOf("viewBox=\"0 0 " + modules + " " + modules + "\"") > 0);
+		String path = svg.substring(svg.indexOf(" d=\"M0 .5") + 9, svg.indexOf("\"/>\n</svg>"));
+		boolean[][] drawn = new boolean[modules][modules];
+		Matcher matcher = RUN.matcher(path);
+		int x = 0;
+		int y = 0;
+		int end = 0;
+		while (matcher.find()) {
+			assertEquals(end, matcher.start(), "Unexpected path command at " + end);
+			x += Integer.parseInt(matcher.group(1));
+			y += Integer.parseInt(matcher.group(2));
+			int length = Integer.parseInt(matcher.group(3));
+			for (int i = 0; i < length; i++) {
+				assertFalse(drawn[x + i][y]);
+				drawn[x + i][y] = true;
+			}
+			x += length;
+			end = matcher.end();
+		}
+		assertEquals(path.length(), end);
+
+		for (int col = 0; col < modules; col++) {
+			for (int row = 0; row < modules; row++) {
+				boolean inside = col >= 4 && row >= 4 && col < modules - 4 && row < modules - 4;
+				assertEquals(inside && code.isDark(col - 4, row - 4), drawn[col][row]);
+			}
+		}
+	}
+
+	@Test
+	void testRunsAreMerged() throws IOException {
+		QrCode code = new QrEncoder().encode("HELLO WORLD");
+		StringBuilder svg = new StringBuilder();
+		new SvgWriter(1, 0).write(code, svg);
+		int dark = 0;
+		for (int col = 0; col < code.getSize(); col++) {
+			for (int row = 0; row < code.getSize(); row++) {
+				dark += code.isDark(col, row) ? 1 : 0;
+			}
+		}
+		int runs = 0;
+		Matcher matcher = RUN.matcher(svg);
+		while (matcher.find()) {
+			++runs;
+		}
+		// the top row of the finder patterns alone is a run of 7 modules
+		assertTrue(runs * 3 < dark * 2, runs + " runs for " + dark + " dark modules");
+	}
+
+	@Test
+	void testWriterMatchesStringBuilder() throws IOException {
+		QrCode code = new QrEncoder().encode("same document");
+		SvgWriter writer = new SvgWriter(10, 4);
+		StringBuilder builder = new StringBuilder();
+		StringWriter stringWriter = new StringWriter();
+		writer.write(code, builder);
+		writer.write(code, stringWriter);
+		assertEquals(builder.toString(), stringWriter.toString());
+		assertTrue(builder.indexOf("width=\"290\" height=\"290\"") > 0);
+	}
+
+	@Test
+	void testInvalidSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new SvgWriter(0, 4));
+		assertThrows(IllegalArgumentException.class, () -> new SvgWriter(1, -1));
+	}
+}
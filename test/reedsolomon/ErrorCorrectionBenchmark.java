@@ -0,0 +1,171 @@
+package reedsolomon;
+
+import java.util.Random;
+
+public class ErrorCorrectionBenchmark {
+
+	/*
+	 * Parameters
+	 */
+	private static final int MESSAGES = 100_000;
+	private static final int ROUNDS = 10;
+
+	/*
+	 * Data and ECC lengths of the versions 1 to 4 with correction level L
+	 */
+	private static final int[] MESSAGE_LENGTHS = { 19, 34, 55, 80 };
+	private static final int[] ECC_LENGTHS = { 7, 10, 15, 20 };
+
+	public static void main(String[] args) {
+		for (int i = 0; i < MESSAGE_LENGTHS.length; i++) {
+			compareBatch(MESSAGE_LENGTHS[i], ECC_LENGTHS[i]);
+		}
+		for (int i = 0; i < MESSAGE_LENGTHS.length; i++) {
+			compareSequence(MESSAGE_LENGTHS[i], ECC_LENGTHS[i]);
+		}
+		for (int i = 0; i < MESSAGE_LENGTHS.length; i++) {
+			measureDecoding(MESSAGE_LENGTHS[i], ECC_LENGTHS[i]);
+		}
+	}
+
+	/**
+	 * Print the throughput of the syndrome check and of the decoder, on valid blocks and on
+	 * blocks with as many errors as can be corrected
+	 */
+	private static void measureDecoding(int messageLength, int eccLength) {
+		int length = messageLength + eccLength;
+		int[][] blocks = new int[MESSAGES][length];
+		int[][] messages = randomMessages(MESSAGES, messageLength);
+		int[] ecc = new int[eccLength];
+		for (int m = 0; m < MESSAGES; m++) {
+			ErrorCorrectionEncoding.encode(messages[m], 0, messageLength, ecc, 0, eccLength);
+			System.arraycopy(messages[m], 0, blocks[m], 0, messageLength);
+			System.arraycopy(ecc, 0, blocks[m], messageLength, eccLength);
+		}
+		int[][] corrupted = new int[MESSAGES][];
+		Random random = new Random(1);
+		for (int m = 0; m < MESSAGES; m++) {
+			corrupted[m] = blocks[m].clone();
+			for (int e = 0; e < eccLength / 2; e++) {
+				corrupted[m][random.nextInt(length)] ^= 1 + random.nextInt(255);
+			}
+		}
+
+		ErrorCorrectionDecoder decoder = new ErrorCorrectionDecoder();
+		long verify = Long.MAX_VALUE;
+		long decodeValid = Long.MAX_VALUE;
+		long decodeErrors = Long.MAX_VALUE;
+		int[] work = new int[length];
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int m = 0; m < MESSAGES; m++) {
+				if (!ErrorCorrectionDecoder.verify(blocks[m], 0, length, eccLength)) {
+					throw new IllegalStateException("Invalid block");
+				}
+			}
+			verify = Math.min(verify, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int m = 0; m < MESSAGES; m++) {
+				decoder.decode(blocks[m], 0, length, eccLength);
+			}
+			decodeValid = Math.min(decodeValid, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int m = 0; m < MESSAGES; m++) {
+				System.arraycopy(corrupted[m], 0, work, 0, length);
+				decoder.decode(work, 0, length, eccLength);
+			}
+			decodeErrors = Math.min(decodeErrors, System.nanoTime() - start);
+		}
+
+		System.out.printf("%3d data + %2d ECC   verify: %,12.0f blk/s   decode valid: %,12.0f blk/s   decode %d errors: %,12.0f blk/s%n",
+				messageLength, eccLength, perSecond(verify), perSecond(decodeValid), eccLength / 2, perSecond(decodeErrors));
+	}
+
+	/**
+	 * Print the throughput of the scalar encoder and of the sequence encoder for a series
+	 * of messages differing only in a trailing counter
+	 */
+	private static void compareSequence(int messageLength, int eccLength) {
+		int[][] messages = randomMessages(1, messageLength);
+		int[] message = messages[0];
+		int[] ecc = new int[eccLength];
+		ErrorCorrectionEncoding.preloadGenerators(eccLength);
+
+		long scalar = Long.MAX_VALUE;
+		long sequence = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int m = 0; m < MESSAGES; m++) {
+				setCounter(message, m);
+				ErrorCorrectionEncoding.encode(message, 0, messageLength, ecc, 0, eccLength);
+			}
+			scalar = Math.min(scalar, System.nanoTime() - start);
+
+			SequenceEncoder encoder = new SequenceEncoder(messageLength, eccLength);
+			start = System.nanoTime();
+			for (int m = 0; m < MESSAGES; m++) {
+				setCounter(message, m);
+				encoder.encode(message, ecc);
+			}
+			sequence = Math.min(sequence, System.nanoTime() - start);
+		}
+
+		System.out.printf("%3d data + %2d ECC   scalar: %,12.0f msg/s   sequence: %,12.0f msg/s   (x%.2f)%n",
+				messageLength, eccLength, perSecond(scalar), perSecond(sequence), (double) scalar / sequence);
+	}
+
+	/**
+	 * Write a 6 digit decimal counter at the end of the message, as in ASSET-000001
+	 */
+	private static void setCounter(int[] message, int counter) {
+		for (int i = message.length - 1; i >= message.length - 6; i--) {
+			message[i] = '0' + counter % 10;
+			counter /= 10;
+		}
+	}
+
+	/**
+	 * Print the throughput of the scalar encoder and of the batch encoder for messages
+	 * of the given shape
+	 */
+	private static void compareBatch(int messageLength, int eccLength) {
+		int[][] messages = randomMessages(MESSAGES, messageLength);
+		int[][] ecc = new int[MESSAGES][eccLength];
+		ErrorCorrectionEncoding.preloadGenerators(eccLength);
+
+		long scalar = Long.MAX_VALUE;
+		long batch = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int m = 0; m < MESSAGES; m++) {
+				ErrorCorrectionEncoding.encode(messages[m], 0, messageLength, ecc[m], 0, eccLength);
+			}
+			scalar = Math.min(scalar, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			ErrorCorrectionEncoding.encodeBatch(messages, ecc, eccLength);
+			batch = Math.min(batch, System.nanoTime() - start);
+		}
+
+		System.out.printf("%3d data + %2d ECC   scalar: %,12.0f msg/s   batch: %,12.0f msg/s   (x%.2f)%n",
+				messageLength, eccLength, perSecond(scalar), perSecond(batch), (double) scalar / batch);
+	}
+
+	private static int[][] randomMessages(int count, int length) {
+		Random random = new Random(42);
+		int[][] messages = new int[count][length];
+		for (int[] message : messages) {
+			for (int i = 0; i < length; i++) {
+				message[i] = random.nextInt(256);
+			}
+		}
+		return messages;
+	}
+
+	private static double perSecond(long nanos) {
+		return MESSAGES * 1e9 / nanos;
+	}
+
+}
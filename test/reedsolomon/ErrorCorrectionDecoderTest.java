@@ -0,0 +1,61 @@
+package reedsolomon;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class ErrorCorrectionDecoderTest {
+
+	private final int[] bybetAndError = { 65, 21, 7, 38, 246, 119, 38, 22, 214, 214, 150, 230, 114, 6, 151, 50, 6, 18,
+			0, 143, 165, 236, 181, 112, 47, 93 };
+
+	@Test
+	void testVerify() {
+		assertTrue(ErrorCorrectionDecoder.verify(bybetAndError, 0, bybetAndError.length, 7));
+
+		int[] corrupted = bybetAndError.clone();
+		corrupted[3] ^= 0x10;
+		assertFalse(ErrorCorrectionDecoder.verify(corrupted, 0, corrupted.length, 7));
+	}
+
+	@Test
+	void testDecodeWithoutErrors() {
+		int[] codewords = bybetAndError.clone();
+		assertEquals(0, new ErrorCorrectionDecoder().decode(codewords, 0, codewords.length, 7));
+		assertArrayEquals(bybetAndError, codewords);
+	}
+
+	@Test
+	void testDecodeErrors() {
+		int[] codewords = bybetAndError.clone();
+		codewords[0] = 0;
+		codewords[10] ^= 0xFF;
+		codewords[25] = 1;
+		assertEquals(3, new ErrorCorrectionDecoder().decode(codewords, 0, codewords.length, 7));
+		assertArrayEquals(bybetAndError, codewords);
+	}
+
+	@Test
+	void testDecodeErasures() {
+		int[] codewords = bybetAndError.clone();
+		int[] erasures = { 1, 5, 8, 13, 20 };
+		for (int erasure : erasures) {
+			codewords[erasure] = 0;
+		}
+		codewords[17] ^= 0x42;
+		assertEquals(6, new ErrorCorrectionDecoder().decode(codewords, 0, codewords.length, 7, erasures, erasures.length));
+		assertArrayEquals(bybetAndError, codewords);
+	}
+
+	@Test
+	void testTooManyErrors() {
+		int[] codewords = bybetAndError.clone();
+		for (int i = 0; i < 8; i++) {
+			codewords[3 * i] ^= 0x5A;
+		}
+		int[] corrupted = codewords.clone();
+		assertEquals(-1, new ErrorCorrectionDecoder().decode(codewords, 0, codewords.length, 7));
+		assertArrayEquals(corrupted, codewords);
+	}
+
+}
@@ -0,0 +1,53 @@
+package reedsolomon;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ErrorCorrectionEncodingTest {
+
+	/*
+	 * ECC lengths of the first versions and of the longest blocks, with data lengths
+	 */
+	private static final int[] ECC_LENGTHS = { 7, 10, 13, 17, 22, 30 };
+	private static final int[] MESSAGE_LENGTHS = { 19, 34, 13, 9, 46, 118 };
+
+	@Test
+	void testBatchMatchesScalar() {
+		Random random = new Random(3);
+		// counts below, at and above the 8 lanes, so that the last group is partial
+		for (int count : new int[] { 1, 7, 8, 13, 16, 29 }) {
+			for (int i = 0; i < ECC_LENGTHS.length; i++) {
+				int[][] messages = new int[count][MESSAGE_LENGTHS[i]];
+				for (int[] message : messages) {
+					for (int j = 0; j < message.length; j++) {
+						message[j] = random.nextInt(256);
+					}
+				}
+				int[][] ecc = new int[count][ECC_LENGTHS[i]];
+				ErrorCorrectionEncoding.encodeBatch(messages, ecc, ECC_LENGTHS[i]);
+				for (int m = 0; m < count; m++) {
+					assertArrayEquals(ErrorCorrectionEncoding.encode(messages[m], ECC_LENGTHS[i]), ecc[m],
+							count + " messages, " + ECC_LENGTHS[i] + " ECC, message " + m);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testBatchExtremeBytes() {
+		// all zero and all 0xFF lanes exercise the carry masks of the packed multiplication
+		int[][] messages = new int[13][26];
+		for (int m = 0; m < messages.length; m++) {
+			Arrays.fill(messages[m], m % 2 == 0 ? 0 : 0xFF);
+		}
+		int[][] ecc = new int[13][10];
+		ErrorCorrectionEncoding.encodeBatch(messages, ecc, 10);
+		for (int m = 0; m < messages.length; m++) {
+			assertArrayEquals(ErrorCorrectionEncoding.encode(messages[m], 10), ecc[m]);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package reedsolomon;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SequenceEncoderTest {
+
+	private final int[] byteCodeV1 = { 65, 21, 7, 38, 246, 119, 38, 22, 214, 214, 150, 230, 114, 6, 151, 50, 6, 18, 0 };
+	private final int[] errorCodeV1 = { 143, 165, 236, 181, 112, 47, 93 };
+
+	@Test
+	void testFirstMessage() {
+		SequenceEncoder encoder = new SequenceEncoder(byteCodeV1.length, 7);
+		assertArrayEquals(errorCodeV1, encoder.encode(byteCodeV1));
+		assertEquals(byteCodeV1.length, encoder.getChangedBytes());
+	}
+
+	@Test
+	void testSerialNumbers() {
+		SequenceEncoder encoder = new SequenceEncoder(byteCodeV1.length, 7);
+		int[] message = byteCodeV1.clone();
+		for (int counter = 0; counter < 1000; counter++) {
+			message[16] = counter >> 8;
+			message[17] = counter & 0xFF;
+			assertArrayEquals(ErrorCorrectionEncoding.encode(message, 7), encoder.encode(message));
+		}
+		assertEquals(1, encoder.getChangedBytes());
+	}
+
+	@Test
+	void testRandomChanges() {
+		Random random = new Random(7);
+		SequenceEncoder encoder = new SequenceEncoder(80, 20);
+		int[] message = new int[80];
+		for (int round = 0; round < 200; round++) {
+			for (int change = random.nextInt(5); change >= 0; change--) {
+				message[random.nextInt(message.length)] = random.nextInt(256);
+			}
+			assertArrayEquals(ErrorCorrectionEncoding.encode(message, 20), encoder.encode(message));
+		}
+	}
+
+	@Test
+	void testReset() {
+		SequenceEncoder encoder = new SequenceEncoder(byteCodeV1.length, 7);
+		encoder.encode(new int[byteCodeV1.length]);
+		encoder.reset();
+		assertArrayEquals(errorCodeV1, encoder.encode(byteCodeV1));
+	}
+
+}